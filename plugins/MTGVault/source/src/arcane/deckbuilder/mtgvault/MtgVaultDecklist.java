@@ -4,7 +4,6 @@ package arcane.deckbuilder.mtgvault;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import arcane.Arcane;
 import arcane.ArcaneException;
@@ -13,6 +12,7 @@ import arcane.Decklist;
 import arcane.DecklistCard;
 import arcane.ui.util.ProgressDialog;
 import arcane.util.CSVReader;
+import arcane.util.IntIntMap;
 
 public class MtgVaultDecklist implements Decklist {
 	public String name;
@@ -83,7 +83,7 @@ public class MtgVaultDecklist implements Decklist {
 		if (runnable.ex != null) throw runnable.ex;
 	}
 
-	public void save (List<Card> deckCards, Map<Card, Integer> deckCardToQty, List<Card> sideCards, Map<Card, Integer> sideCardToQty) throws IOException {
+	public void save (List<Card> deckCards, IntIntMap deckCardToQty, List<Card> sideCards, IntIntMap sideCardToQty) throws IOException {
 		final ProgressDialog dialog = new ProgressDialog("MTG Vault");
 		dialog.setMessage("Saving deck to vault: " + name);
 		dialog.setAlwaysOnTop(true);
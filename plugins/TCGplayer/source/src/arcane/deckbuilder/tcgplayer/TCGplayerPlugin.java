@@ -15,7 +15,6 @@ import java.net.URLEncoder;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
@@ -33,6 +32,7 @@ import arcane.deckbuilder.ui.DeckBuilder;
 import arcane.ui.util.ProgressDialog;
 import arcane.util.CSVReader;
 import arcane.util.CSVWriter;
+import arcane.util.IntIntMap;
 
 public class TCGplayerPlugin extends DeckBuilderPlugin {
     private Map<String, String> sets;
@@ -68,24 +68,24 @@ public class TCGplayerPlugin extends DeckBuilderPlugin {
 	StringBuilder sb = new StringBuilder(
 		"http://store.tcgplayer.com/list/selectproductmagic.aspx?partner=ARCANE&c=");
 	String joiner = "";
-	for (Entry<Card, Integer> entry : deckBuilder.getDeckCardToQty()
-		.entrySet()) {
+	IntIntMap deckCardToQty = deckBuilder.getDeckCardToQty();
+	for (Card card : deckBuilder.getDeckCards()) {
 	    try {
 		sb.append(joiner);
-		sb.append(entry.getValue());
+		sb.append(deckCardToQty.get(card.id, 0));
 		sb.append("%20");
-		sb.append(URLEncoder.encode(entry.getKey().name, "UTF8"));
+		sb.append(URLEncoder.encode(card.name, "UTF8"));
 		joiner = URLEncoder.encode("||", "UTF8");
 	    } catch (UnsupportedEncodingException e) {
 	    }
 	}
-	for (Entry<Card, Integer> entry : deckBuilder.getSideCardToQty()
-		.entrySet()) {
+	IntIntMap sideCardToQty = deckBuilder.getSideCardToQty();
+	for (Card card : deckBuilder.getSideCards()) {
 	    try {
 		sb.append(joiner);
-		sb.append(entry.getValue());
+		sb.append(sideCardToQty.get(card.id, 0));
 		sb.append("%20");
-		sb.append(URLEncoder.encode(entry.getKey().name, "UTF8"));
+		sb.append(URLEncoder.encode(card.name, "UTF8"));
 		joiner = URLEncoder.encode("||", "UTF8");
 	    } catch (UnsupportedEncodingException e) {
 	    }
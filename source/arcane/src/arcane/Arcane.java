@@ -32,6 +32,9 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -42,7 +45,7 @@ import arcane.ui.ManaSymbols;
 import arcane.ui.table.FlagRenderer;
 import arcane.ui.table.RatingRenderer;
 import arcane.ui.util.MessageFrame;
-import arcane.ui.util.ProgressDialog;
+import arcane.ui.util.Progress;
 import arcane.ui.util.TextComponentOutputStream;
 import arcane.ui.util.UI;
 import arcane.util.CSVReader;
@@ -50,14 +53,18 @@ import arcane.util.CSVWriter;
 import arcane.util.FileUtil;
 import arcane.util.Loader;
 import arcane.util.MultiplexOutputStream;
+import arcane.util.PriorityExecutor.Lane;
+import arcane.util.TaskGraph;
+import arcane.util.TaskGraph.Task;
 import arcane.util.UnicodeReader;
+import arcane.util.Util;
 
 public class Arcane {
 	static public final String version = "0.18";
 
 	private ArcanePreferences prefs;
 	private ArcaneTranslation trans;
-	private Map<Integer, Card> idToCard = new HashMap<Integer, Card>();
+	private Card[] idToCard = new Card[0];
 	private Map<String, List<Card>> nameToCards = new HashMap<String, List<Card>>();
 	private List<Card> allCards = new ArrayList<Card>();
 	private List<String> languages = new ArrayList<String>();
@@ -67,6 +74,7 @@ public class Arcane {
 	private Map<String, Integer> setToOrdinal = new LinkedHashMap<String, Integer>();
 	private Map<Format, Set<String>> formatToSets = new HashMap<Format, Set<String>>();
 	private CardDataStore cardDataStore;
+	private CardIndex cardIndex;
 	private RulingsDataStore rulingsDatastore;
 	private RulesDataStore rulesDatastore;
 	private MessageFrame logFrame;
@@ -76,6 +84,8 @@ public class Arcane {
 	private Map<String, Set<Format>> cardNameToBannedFormats = new HashMap<String, Set<Format>>();
 	private Map<String, Set<Format>> cardNameToRestrictedFormats = new HashMap<String, Set<Format>>();
 	private boolean loadRuleData;
+	private RuleDataLoad rulesLoad, rulingsLoad;
+	private String dataDir;
 
 	static private Arcane instance = null;
 
@@ -190,7 +200,7 @@ public class Arcane {
 	}
 
 	public Card getCard (int cardID) {
-		Card card = idToCard.get(cardID);
+		Card card = cardID >= 0 && cardID < idToCard.length ? idToCard[cardID] : null;
 		if (card == null) throw new ArcaneException("Card ID not found: " + cardID);
 		return card;
 	}
@@ -205,19 +215,53 @@ public class Arcane {
 
 	public Card getCard (String name, String set) {
 		if (set == null) return getCard(name);
+		List<Card> cards = getCards(name);
 		set = getMainSet(set);
-		for (Card card : getCards(name))
-			if (card.set.equals(set)) return card;
-		throw new ArcaneException("Card \"" + name + "\" not found with set: " + set);
+		int index = getSetIndex(cards, set);
+		if (index == -1) throw new ArcaneException("Card \"" + name + "\" not found with set: " + set);
+		return cards.get(index);
 	}
 
 	public Card getCard (String name, String set, String version) {
 		if ("".equals(version)) return getCard(name, set);
-		for (Card card : getCards(name, set))
-			if (card.version.equals(version)) return card;
+		List<Card> cards = getCards(name);
+		if (set == null) {
+			for (int i = 0, n = cards.size(); i < n; i++) {
+				Card card = cards.get(i);
+				if (card.version.equals(version)) return card;
+			}
+		} else {
+			String mainSet = getMainSet(set);
+			int index = getSetIndex(cards, mainSet);
+			if (index == -1) throw new ArcaneException("Card \"" + name + "\" not found with set: " + mainSet);
+			for (int n = cards.size(); index < n; index++) {
+				Card card = cards.get(index);
+				if (!card.set.equals(mainSet)) break;
+				if (card.version.equals(version)) return card;
+			}
+		}
 		throw new ArcaneException("Card \"" + name + "\" not found in set \"" + set + "\" with version: " + version);
 	}
 
+	/**
+	 * Returns the index of the first card in the set, or -1. Each name's cards are sorted by set ordinal, so this is a binary
+	 * search over the printings of a single card.
+	 */
+	private int getSetIndex (List<Card> cards, String set) {
+		Integer ordinal = setToOrdinal.get(set);
+		if (ordinal == null) return -1;
+		int low = 0, high = cards.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (setToOrdinal.get(cards.get(middle).set) < ordinal)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		if (low == cards.size() || !cards.get(low).set.equals(set)) return -1;
+		return low;
+	}
+
 	public ArcanePreferences getPrefs () {
 		return prefs;
 	}
@@ -226,18 +270,87 @@ public class Arcane {
 		return trans;
 	}
 
+	/**
+	 * Returns the in memory index used to search the cards.
+	 */
+	public CardIndex getCardIndex () {
+		return cardIndex;
+	}
+
+	/**
+	 * Returns a connection to the cards database. The database is populated from the loaded cards the first time it is used.
+	 */
 	public CardDataStoreConnection getCardDataStoreConnection () throws SQLException {
+		synchronized (this) {
+			if (cardDataStore == null) {
+				cardDataStore = new CardDataStore();
+				cardDataStore.populate(cardIndex);
+			}
+		}
 		return cardDataStore.getThreadConnection();
 	}
 
+	/**
+	 * Starts populating the rules and rulings datastores in the background, if they are not already loading. This is done once the
+	 * UI is visible so the rule data does not delay startup. The datastores themselves are opened during startup.
+	 */
+	public synchronized void loadRuleDataInBackground () {
+		if (!loadRuleData || rulesLoad != null) return;
+		rulesLoad = new RuleDataLoad("rules", new Callable<Object>() {
+			public Object call () throws Exception {
+				rulesDatastore.populate(new LogProgress(), dataDir);
+				return null;
+			}
+		});
+		rulingsLoad = new RuleDataLoad("rulings", new Callable<Object>() {
+			public Object call () throws Exception {
+				rulingsDatastore.populate(new LogProgress(), dataDir);
+				return null;
+			}
+		});
+		// Dedicated threads, so threads in the pool waiting on the rule data can't prevent it from loading.
+		rulesLoad.start();
+		rulingsLoad.start();
+	}
+
+	/**
+	 * Returns a connection to the rules database, blocking until the rules are loaded.
+	 */
 	public RulesDataStoreConnection getRulesDataStoreConnection () throws SQLException {
+		getRuleDataLoad(true).await();
 		return rulesDatastore.getThreadConnection();
 	}
 
+	/**
+	 * Returns a connection to the rulings database, blocking until the rulings are loaded.
+	 * @see #isRulingsLoaded()
+	 */
 	public RulingsDataStoreConnection getRulingsDataStoreConnection () throws SQLException {
+		getRuleDataLoad(false).await();
 		return rulingsDatastore.getThreadConnection();
 	}
 
+	/**
+	 * Returns true if the rulings loaded successfully, so {@link #getRulingsDataStoreConnection()} will not block or fail.
+	 */
+	public boolean isRulingsLoaded () {
+		return getRuleDataLoad(false).isLoaded();
+	}
+
+	/**
+	 * Runs the runnable on the thread pool once the rulings are loaded, or right away if they are already loaded. The runnable is
+	 * not run if loading the rulings fails.
+	 */
+	public void runWhenRulingsLoaded (Runnable runnable) {
+		getRuleDataLoad(false).runWhenDone(runnable);
+	}
+
+	private synchronized RuleDataLoad getRuleDataLoad (boolean rules) {
+		if (!loadRuleData) throw new IllegalStateException("Rule data is not available.");
+		loadRuleDataInBackground();
+		return rules ? rulesLoad : rulingsLoad;
+	}
+
 	public MessageFrame getLogFrame () {
 		return logFrame;
 	}
@@ -350,7 +463,7 @@ public class Arcane {
 	private class DataLoader extends Loader {
 		private String prefsFileName;
 		private String transFileName;
-		private String dataDir;
+		private volatile TaskGraph graph;
 
 		public DataLoader (String title, String prefsFileName) {
 			super(title);
@@ -438,25 +551,74 @@ public class Arcane {
 			prefs.rulesTimestamp = rulesStamp;
 			prefs.rulingsTimestamp = rulingsStamp;
 
-			if (isCancelled()) return;
-
 			if (loadRuleData) {
-				// Load rule data.
-				dialog.setMessage("Initializing rules datastore...");
+				// Opened here rather than when populated in the background, so a second instance fails at startup when the
+				// database is already open.
+				dialog.setMessage("Opening rules datastore...");
 				rulesDatastore = new RulesDataStore();
-				rulesDatastore.populate(dialog, dataDir);
-				if (isCancelled()) return;
-
-				dialog.setMessage("Initializing rulings datastore...");
 				rulingsDatastore = new RulingsDataStore();
-				rulingsDatastore.populate(dialog, dataDir);
-				if (isCancelled()) return;
 			}
 
-			// Load card data.
-			loadCardData(dialog);
+			if (isCancelled()) return;
+
+			// Stages that do not depend on each other are loaded at the same time.
+			graph = new TaskGraph(dialog);
+			Task setsTask = new Task("Loading sets...", 0.1f) {
+				public void run () throws Exception {
+					loadSets();
+				}
+			};
+			Task cardsTask = new Task("Loading card data...", 2, setsTask) {
+				public void run () throws Exception {
+					allCards = CardDataStore.loadCards(this, dataDir);
+				}
+			};
+			Task cardDataTask = new Task("Indexing card data...", 0.3f, cardsTask) {
+				public void run () throws Exception {
+					loadCardData(this);
+				}
+			};
+			// These only read the cards by name and each set different card fields, so they run at the same time.
+			Task userDataTask = new Task("Loading user data...", 0.2f, cardDataTask) {
+				public void run () throws Exception {
+					loadUserData();
+				}
+			};
+			Task manaProducedTask = new Task("Loading mana produced...", 0.1f, cardDataTask) {
+				public void run () throws Exception {
+					loadManaProduced(dataDir + "titleToLandColors.csv");
+					loadManaProduced(dataDir + "titleToCardColors.csv");
+				}
+			};
+			Task formatsTask = new Task("Loading formats...", 0.1f, cardDataTask) {
+				public void run () throws Exception {
+					loadFormats();
+				}
+			};
+			// The index includes the mana produced.
+			Task cardIndexTask = new Task("Indexing cards...", 0.3f, manaProducedTask) {
+				public void run () throws Exception {
+					cardIndex = new CardIndex(allCards);
+				}
+			};
+			// Changes the card names, so it runs once nothing else reads the cards by name.
+			Task languageTask = new Task("Loading language...", 0.1f, cardIndexTask, userDataTask, formatsTask) {
+				public void run () throws Exception {
+					loadLanguage(this);
+				}
+			};
+			graph.add(setsTask);
+			graph.add(cardsTask);
+			graph.add(cardDataTask);
+			graph.add(userDataTask);
+			graph.add(manaProducedTask);
+			graph.add(formatsTask);
+			graph.add(cardIndexTask);
+			graph.add(languageTask);
+			graph.run(Util.threadPool.getExecutor(Lane.load));
 
 			if (isCancelled()) return;
+			dialog.setValue(-1);
 
 			// Load plugins.
 			loadPlugins();
@@ -464,6 +626,12 @@ public class Arcane {
 			if (isCancelled()) return;
 		}
 
+		protected void cancel () {
+			super.cancel();
+			TaskGraph graph = this.graph;
+			if (graph != null) graph.cancel();
+		}
+
 		private void loadPlugins () throws IOException {
 			File pluginsDir = new File("plugins");
 			if (!pluginsDir.exists() || !pluginsDir.isDirectory()) return;
@@ -510,19 +678,15 @@ public class Arcane {
 				plugin.loadPreferences();
 		}
 
-		private void loadCardData (ProgressDialog dialog) throws IOException, SQLException {
-			dialog.setMessage("Loading card data...");
-
-			loadSets();
-
-			cardDataStore = new CardDataStore();
-			allCards = cardDataStore.populate(dialog, dataDir);
-
-			if (isCancelled()) return;
-			dialog.setValue(-1);
+		private void loadCardData (Progress progress) throws IOException {
+			progress.setValue(-1);
 
+			int maxID = 0;
+			for (Card card : allCards)
+				maxID = Math.max(maxID, card.id);
+			idToCard = new Card[maxID + 1];
 			for (Card card : allCards) {
-				idToCard.put(card.id, card);
+				idToCard[card.id] = card;
 				List<Card> cards = nameToCards.get(card.name.toLowerCase());
 				if (cards == null) {
 					cards = new ArrayList<Card>();
@@ -541,17 +705,8 @@ public class Arcane {
 					return card1.version.compareTo(card2.version);
 				}
 			};
-			for (Card card : getCards())
-				Collections.sort(getCards(card.name), cardSetComparator);
-
-			loadUserData();
-
-			loadManaProduced(dataDir + "titleToLandColors.csv");
-			loadManaProduced(dataDir + "titleToCardColors.csv");
-
-			loadFormats();
-
-			loadLanguage(dialog);
+			for (List<Card> cards : nameToCards.values())
+				Collections.sort(cards, cardSetComparator);
 		}
 
 		private void loadSets () throws IOException, SQLException {
@@ -589,7 +744,7 @@ public class Arcane {
 			reader.close();
 		}
 
-		private void loadLanguage (ProgressDialog dialog) {
+		private void loadLanguage (Progress progress) {
 			FilenameFilter cardsFilter = new FilenameFilter() {
 				public boolean accept (File dir, String filename) {
 					return filename.toLowerCase().startsWith("cards-") && filename.toLowerCase().endsWith(".csv")
@@ -615,7 +770,7 @@ public class Arcane {
 
 			if (prefs.isEnglishLanguage()) return;
 
-			dialog.setMessage("Loading language: " + prefs.language);
+			progress.setMessage("Loading language: " + prefs.language);
 
 			File languageFile = new File(dataDir + "cards-" + prefs.language.toLowerCase() + ".csv");
 			if (!languageFile.exists()) {
@@ -623,7 +778,6 @@ public class Arcane {
 				return;
 			}
 			try {
-				CardDataStoreConnection conn = cardDataStore.getThreadConnection();
 				CSVReader reader = new CSVReader(new UnicodeReader(new FileInputStream(languageFile), "UTF-8"), ",", "\"", true, true);
 				while (true) {
 					List<String> fields = reader.getFields();
@@ -639,13 +793,13 @@ public class Arcane {
 					if (newName.length() == 0) newName = name;
 					String newType = fields.get(2);
 					String newLegal = fields.get(3);
-					conn.updateCardLanguage(name, newName, newType, newLegal);
 					try{
 						List<Card> cards = getCards(name);
 						for (Card card : cards) {
 							card.name = newName;
 							card.type = newType;
 							card.legal = newLegal;
+							cardIndex.updateCardLanguage(card);
 						}
 						List<Card> tmp = nameToCards.get(newName.toLowerCase());
 						if(tmp != null && !tmp.get(0).englishName.equals(name))
@@ -655,8 +809,6 @@ public class Arcane {
 						log("Localized data for missing card: " + name);
 					}
 				}
-			} catch (SQLException ex) {
-				logError("Error loading language: " + prefs.language, ex);
 			} catch (IOException ex) {
 				logError("Error loading language: " + prefs.language, ex);
 			}
@@ -696,8 +848,7 @@ public class Arcane {
 			csvReader.close();
 		}
 
-		private void loadManaProduced (String fileName) throws IOException, SQLException {
-			CardDataStoreConnection conn = cardDataStore.newConnection();
+		private void loadManaProduced (String fileName) throws IOException {
 			CSVReader reader = new CSVReader(new UnicodeReader(new FileInputStream(fileName), "UTF-8"), ",", "\"", true, true);
 			while (true) {
 				List<String> fields = reader.getFields();
@@ -715,11 +866,9 @@ public class Arcane {
 						buffer.append('}');
 					}
 					card.manaProduced = buffer.toString();
-					conn.updateManaProduced(card.name, card.manaProduced);
 				}
 			}
 			reader.close();
-			conn.close();
 		}
 
 		private void loadFormats () throws IOException {
@@ -777,6 +926,91 @@ public class Arcane {
 		}
 	}
 
+	/**
+	 * Loads a rule datastore on its own thread and runs queued runnables once it is done.
+	 */
+	static private class RuleDataLoad extends FutureTask<Object> {
+		private final String name;
+		private final List<Runnable> runWhenDone = new ArrayList<Runnable>();
+		private volatile boolean loaded;
+
+		public RuleDataLoad (String name, Callable<Object> callable) {
+			super(callable);
+			this.name = name;
+		}
+
+		public void start () {
+			Thread thread = new Thread(this, "RuleDataLoad-" + name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		public void await () throws SQLException {
+			try {
+				get();
+			} catch (InterruptedException ex) {
+				throw new ArcaneException("Interrupted loading " + name + ".", ex);
+			} catch (ExecutionException ex) {
+				if (ex.getCause() instanceof SQLException) throw (SQLException)ex.getCause();
+				throw new ArcaneException("Error loading " + name + ".", ex.getCause());
+			}
+		}
+
+		/**
+		 * Returns true if the load completed without an error.
+		 */
+		public boolean isLoaded () {
+			return loaded;
+		}
+
+		public void runWhenDone (Runnable runnable) {
+			synchronized (this) {
+				if (!isDone()) {
+					runWhenDone.add(runnable);
+					return;
+				}
+			}
+			if (loaded) Util.threadPool.execute(Lane.load, runnable);
+		}
+
+		protected void set (Object value) {
+			loaded = true;
+			super.set(value);
+		}
+
+		protected void done () {
+			List<Runnable> runnables;
+			synchronized (this) {
+				runnables = new ArrayList<Runnable>(runWhenDone);
+				runWhenDone.clear();
+			}
+			if (!loaded) {
+				// Logged once here. Callers check isLoaded and continue without the data.
+				try {
+					get();
+				} catch (ExecutionException ex) {
+					Arcane.getInstance().log("Error loading " + name + ".", ex);
+				} catch (Exception ignored) {
+				}
+				return;
+			}
+			for (Runnable runnable : runnables)
+				Util.threadPool.execute(Lane.load, runnable);
+		}
+	}
+
+	/**
+	 * Logs the messages of a background operation that has no progress dialog.
+	 */
+	private class LogProgress implements Progress {
+		public void setMessage (String message) {
+			log(message);
+		}
+
+		public void setValue (float percentage) {
+		}
+	}
+
 	static private class PluginClassLoader extends URLClassLoader {
 		public PluginClassLoader () {
 			super(new URL[0], Arcane.class.getClassLoader());
@@ -36,7 +36,7 @@ public class Card {
 	public int qty = 1;
 	public String shopUrl = "";
 
-	private Card () {
+	Card () {
 		name = "";
 		englishName = "";
 		set = "";
@@ -1,6 +1,7 @@
 
 package arcane;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.sql.PreparedStatement;
@@ -8,7 +9,8 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
-import arcane.ui.util.ProgressDialog;
+import arcane.CardIndex.Column;
+import arcane.ui.util.Progress;
 import arcane.util.CSVReader;
 import arcane.util.DataStore;
 import arcane.util.UnicodeReader;
@@ -47,7 +49,6 @@ public class CardDataStore extends DataStore<CardDataStore.CardDataStoreConnecti
 
 	public final class CardDataStoreConnection extends DataStore<arcane.util.DataStore.DataStoreConnection>.DataStoreConnection {
 		private final PreparedStatement addCard;
-		private final PreparedStatement updateCardLanguage;
 		private final PreparedStatement updateManaProduced;
 		private final PreparedStatement getPictureToCollectorNumbers;
 		private final PreparedStatement setPriceSet;
@@ -59,7 +60,6 @@ public class CardDataStore extends DataStore<CardDataStore.CardDataStoreConnecti
 				+ "(name, englishName, set, type, englishType, rarity, castingcost, convertedcastingcost, "
 				+ "legal, englishLegal, color,  power, toughness, manaProduced, version, collectorNumber, price) "
 				+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
-			updateCardLanguage = prepareStatement("UPDATE :table: SET name=?, legal=?, type=? WHERE name=?");
 			updateManaProduced = prepareStatement("UPDATE :table: SET manaProduced=? WHERE name=?");
 			getPictureToCollectorNumbers = prepareStatement("SELECT version, collectorNumber FROM :table: "
 				+ "WHERE englishName=? AND set=?");
@@ -68,17 +68,17 @@ public class CardDataStore extends DataStore<CardDataStore.CardDataStoreConnecti
 			getPrice = prepareStatement("SELECT price FROM :table: " + "WHERE englishName=? AND set=?");
 		}
 
-		public void addCard (Card card) throws SQLException {
+		public void addCard (Card card, String englishLegal) throws SQLException {
 			addCard.setString(1, card.name.toLowerCase());
-			addCard.setString(2, card.name.toLowerCase());
+			addCard.setString(2, card.englishName.toLowerCase());
 			addCard.setString(3, card.set.toLowerCase());
 			addCard.setString(4, card.type.toLowerCase());
-			addCard.setString(5, card.type.toLowerCase());
+			addCard.setString(5, card.englishType.toLowerCase());
 			addCard.setString(6, card.rarity.toLowerCase());
 			addCard.setString(7, card.castingCost.toLowerCase());
 			addCard.setInt(8, card.convertedCastingCost);
 			addCard.setString(9, card.legal.toLowerCase());
-			addCard.setString(10, card.legal.toLowerCase());
+			addCard.setString(10, englishLegal.toLowerCase());
 			addCard.setString(11, card.color.toLowerCase());
 			addCard.setInt(12, card.power);
 			addCard.setInt(13, card.toughness);
@@ -87,7 +87,7 @@ public class CardDataStore extends DataStore<CardDataStore.CardDataStoreConnecti
 			addCard.setString(16, card.collectorNumber);
 			addCard.setFloat(17, card.price);
 			try {
-				addCard.executeUpdate();
+				addBatch(addCard);
 			} catch (SQLException ex) {
 				SQLException newEx = new SQLException("Unable to add card: " + card.name);
 				newEx.initCause(ex);
@@ -95,20 +95,6 @@ public class CardDataStore extends DataStore<CardDataStore.CardDataStoreConnecti
 			}
 		}
 
-		public void updateCardLanguage (String name, String newName, String newType, String newLegal) throws SQLException {
-			updateCardLanguage.setString(1, newName.toLowerCase());
-			updateCardLanguage.setString(2, newLegal.toLowerCase());
-			updateCardLanguage.setString(3, newType.toLowerCase());
-			updateCardLanguage.setString(4, name.toLowerCase());
-			try {
-				updateCardLanguage.executeUpdate();
-			} catch (SQLException ex) {
-				SQLException newEx = new SQLException("Unable to update card: " + name);
-				newEx.initCause(ex);
-				throw newEx;
-			}
-		}
-
 		public void updateManaProduced (String name, String manaProduced) throws SQLException {
 			updateManaProduced.setString(1, manaProduced.toLowerCase().replace("{", "").replace("}", ""));
 			updateManaProduced.setString(2, name.toLowerCase());
@@ -135,12 +121,19 @@ public class CardDataStore extends DataStore<CardDataStore.CardDataStoreConnecti
 		}
 	}
 
-	List<Card> populate (ProgressDialog dialog, String dataDir) throws IOException, SQLException {
-		dialog.setValue(0);
+	/**
+	 * Returns the cards from "cards.csv". The parsed cards are kept in a snapshot, which is used instead of parsing the CSV as long
+	 * as "cards.csv" and "sets.txt" are unchanged.
+	 */
+	static List<Card> loadCards (Progress dialog, String dataDir) throws IOException {
+		CardSnapshot snapshot = new CardSnapshot(new File(dataDir + "cards.snapshot"), new File(dataDir + "cards.csv"), new File(
+			dataDir + "sets.txt"));
+		List<Card> allCards = snapshot.load();
+		if (allCards != null) return allCards;
 
-		CardDataStoreConnection conn = newConnection();
+		dialog.setValue(0);
 
-		List<Card> allCards = new ArrayList<Card>(20000);
+		allCards = new ArrayList<Card>(20000);
 
 		CSVReader reader = new CSVReader(new UnicodeReader(new FileInputStream(dataDir + "cards.csv"), "UTF-8"), ",", "\"", true,
 			true);
@@ -157,17 +150,28 @@ public class CardDataStore extends DataStore<CardDataStore.CardDataStoreConnecti
 				continue;
 			}
 
-			conn.addCard(card);
 			allCards.add(card);
 
 			if (allCards.size() % 250 == 0) dialog.setValue(allCards.size() / 16000F);
 		}
 		reader.close();
 
+		snapshot.save(allCards);
+
+		return allCards;
+	}
+
+	/**
+	 * Stores the cards in the database, with any localization and mana produced data already applied.
+	 */
+	void populate (CardIndex cardIndex) throws SQLException {
+		CardDataStoreConnection conn = newConnection();
+		conn.beginBulkLoad(500);
+		for (int row = 0, n = cardIndex.size(); row < n; row++)
+			conn.addCard(cardIndex.getCard(row), cardIndex.get(Column.englishLegal, row));
+		conn.endBulkLoad();
 		conn.close();
 
 		createIndexes();
-
-		return allCards;
 	}
 }
@@ -0,0 +1,406 @@
+package arcane;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import arcane.util.TrigramIndex;
+
+/**
+ * Column oriented, in memory index over all cards. Card searches are evaluated directly against the columns and the per attribute
+ * bitsets, without building SQL or looking the resulting rows back up by name, set and version. Rows are in the same order as
+ * {@link Arcane#getCards()}.
+ */
+public class CardIndex {
+	private final Card[] cards;
+	private final int firstID;
+	private final int[] idToRow;
+	private final String[][] strings = new String[Column.values().length][];
+	private final int[][] ints = new int[Column.values().length][];
+	private final BitSet[] attributeRows = new BitSet[Attribute.values().length];
+	private final Map<String, BitSet> setToRows = new HashMap<String, BitSet>();
+	private final TrigramIndex[] textIndexes = new TrigramIndex[Column.values().length];
+
+	CardIndex (List<Card> allCards) {
+		int size = allCards.size();
+		cards = allCards.toArray(new Card[size]);
+
+		int minID = Integer.MAX_VALUE, maxID = -1;
+		for (Card card : cards) {
+			minID = Math.min(minID, card.id);
+			maxID = Math.max(maxID, card.id);
+		}
+		firstID = size == 0 ? 0 : minID;
+		idToRow = new int[size == 0 ? 0 : maxID - minID + 1];
+		for (int row = 0; row < size; row++)
+			idToRow[cards[row].id - firstID] = row;
+
+		for (Column column : Column.values()) {
+			if (column.numeric)
+				ints[column.ordinal()] = new int[size];
+			else
+				strings[column.ordinal()] = new String[size];
+		}
+		for (Attribute attribute : Attribute.values())
+			attributeRows[attribute.ordinal()] = new BitSet(size);
+
+		Arcane arcane = Arcane.getInstance();
+		for (int row = 0; row < size; row++) {
+			Card card = cards[row];
+			set(Column.englishName, row, card.englishName.toLowerCase());
+			set(Column.englishType, row, card.englishType.toLowerCase());
+			set(Column.englishLegal, row, card.legal.toLowerCase());
+			set(Column.castingCost, row, card.castingCost.toLowerCase());
+			set(Column.color, row, card.color.toLowerCase());
+			set(Column.manaProduced, row, card.manaProduced.toLowerCase().replace("{", "").replace("}", ""));
+			ints[Column.power.ordinal()][row] = card.power;
+			ints[Column.toughness.ordinal()][row] = card.toughness;
+			ints[Column.convertedCost.ordinal()][row] = card.convertedCastingCost;
+			Integer setOrdinal = arcane.getSetOrdinal(card.set);
+			ints[Column.setOrdinal.ordinal()][row] = setOrdinal == null ? -1 : setOrdinal;
+
+			BitSet setRows = setToRows.get(card.set);
+			if (setRows == null) {
+				setRows = new BitSet(size);
+				setToRows.put(card.set, setRows);
+			}
+			setRows.set(row);
+
+			updateCardLanguage(row, card);
+		}
+	}
+
+	/**
+	 * Updates the localized name, type and legal text columns for the specified card.
+	 */
+	void updateCardLanguage (Card card) {
+		int row = getRow(card);
+		if (row != -1) updateCardLanguage(row, card);
+	}
+
+	private void updateCardLanguage (int row, Card card) {
+		set(Column.name, row, card.name.toLowerCase());
+		set(Column.type, row, card.type.toLowerCase());
+		set(Column.legal, row, card.legal.toLowerCase());
+		updateAttributes(row);
+	}
+
+	/**
+	 * Returns the trigram index for a text column, building it on first use.
+	 */
+	private synchronized TrigramIndex getTextIndex (Column column) {
+		TrigramIndex textIndex = textIndexes[column.ordinal()];
+		if (textIndex == null) {
+			textIndex = new TrigramIndex(strings[column.ordinal()]);
+			textIndexes[column.ordinal()] = textIndex;
+		}
+		return textIndex;
+	}
+
+	private void updateAttributes (int row) {
+		String castingCost = get(Column.castingCost, row);
+		String color = get(Column.color, row);
+		String englishType = get(Column.englishType, row);
+		String type = get(Column.type, row);
+		Card card = cards[row];
+
+		set(Attribute.white, row, castingCost.indexOf('w') != -1 || color.equals("white"));
+		set(Attribute.blue, row, castingCost.indexOf('u') != -1 || color.equals("blue"));
+		set(Attribute.black, row, castingCost.indexOf('b') != -1 || color.equals("black"));
+		set(Attribute.red, row, castingCost.indexOf('r') != -1 || color.equals("red"));
+		set(Attribute.green, row, castingCost.indexOf('g') != -1 || color.equals("green"));
+		set(Attribute.colorless, row, color.equals("artifact") || color.equals("land"));
+		set(Attribute.gold, row, color.equals("gold"));
+
+		set(Attribute.land, row, color.equals("land"));
+		set(Attribute.artifact, row, color.equals("artifact") || englishType.contains("artifact"));
+		set(Attribute.creature, row, englishType.contains("creature"));
+		set(Attribute.sorcery, row, englishType.contains("sorcery"));
+		set(Attribute.instant, row, englishType.contains("instant"));
+		set(Attribute.enchantment, row, englishType.contains("enchantment") && !type.contains("aura"));
+		set(Attribute.aura, row, englishType.contains("aura"));
+		set(Attribute.planeswalker, row, englishType.contains("planeswalker"));
+
+		String rarity = card.rarity.toLowerCase();
+		set(Attribute.common, row, rarity.equals("c"));
+		set(Attribute.uncommon, row, rarity.equals("u"));
+		set(Attribute.rare, row, rarity.equals("r"));
+		set(Attribute.mythicRare, row, rarity.equals("m"));
+	}
+
+	private void set (Column column, int row, String value) {
+		strings[column.ordinal()][row] = value;
+		if (textIndexes[column.ordinal()] != null) {
+			synchronized (this) {
+				textIndexes[column.ordinal()] = null;
+			}
+		}
+	}
+
+	private void set (Attribute attribute, int row, boolean value) {
+		attributeRows[attribute.ordinal()].set(row, value);
+	}
+
+	/**
+	 * Returns the number of rows in the index.
+	 */
+	public int size () {
+		return cards.length;
+	}
+
+	public Card getCard (int row) {
+		return cards[row];
+	}
+
+	/**
+	 * Returns the row for the specified card, or -1 if the card is not in the index.
+	 */
+	public int getRow (Card card) {
+		int index = card.id - firstID;
+		if (index < 0 || index >= idToRow.length) return -1;
+		int row = idToRow[index];
+		if (cards[row] != card) return -1;
+		return row;
+	}
+
+	/**
+	 * Returns the lowercase value of a text column.
+	 */
+	public String get (Column column, int row) {
+		if (column.numeric) throw new IllegalArgumentException("Column is numeric: " + column);
+		return strings[column.ordinal()][row];
+	}
+
+	public int getInt (Column column, int row) {
+		if (!column.numeric) throw new IllegalArgumentException("Column is not numeric: " + column);
+		return ints[column.ordinal()][row];
+	}
+
+	/**
+	 * Returns a new bitset with every row set.
+	 */
+	public BitSet getAllRows () {
+		BitSet rows = new BitSet(cards.length);
+		rows.set(0, cards.length);
+		return rows;
+	}
+
+	/**
+	 * Returns the rows having the specified attribute. The bitset is shared and must not be modified.
+	 */
+	public BitSet getRows (Attribute attribute) {
+		return attributeRows[attribute.ordinal()];
+	}
+
+	/**
+	 * Returns a new bitset with the rows for cards in any of the specified sets.
+	 */
+	public BitSet getRows (Iterable<String> sets) {
+		BitSet rows = new BitSet(cards.length);
+		for (String set : sets) {
+			if (set == null) continue;
+			BitSet setRows = setToRows.get(set);
+			if (setRows != null) rows.or(setRows);
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns a filter matching rows where the column matches an SQL LIKE pattern ('%' and '_' wildcards). The column's trigram
+	 * index narrows the rows that need to be checked.
+	 */
+	public Filter like (final Column column, final String pattern) {
+		final String[] values = strings[column.ordinal()];
+		if (values == null) throw new IllegalArgumentException("Column is numeric: " + column);
+		TrigramIndex textIndex = getTextIndex(column);
+		// Most searches are "%text%", which the trigram index answers directly.
+		int n = pattern.length();
+		if (n >= 2 && pattern.charAt(0) == '%' && pattern.charAt(n - 1) == '%') {
+			String text = pattern.substring(1, n - 1);
+			if (text.indexOf('%') == -1 && text.indexOf('_') == -1) {
+				final BitSet rows = textIndex.search(text);
+				return new Filter() {
+					public boolean matches (int row) {
+						return rows.get(row);
+					}
+				};
+			}
+		}
+		// Only rows containing every trigram of each literal part of the pattern can match.
+		BitSet candidates = null;
+		for (String literal : pattern.split("[%_]")) {
+			BitSet literalCandidates = textIndex.getCandidates(literal);
+			if (literalCandidates == null) continue;
+			if (candidates == null)
+				candidates = literalCandidates;
+			else
+				candidates.and(literalCandidates);
+		}
+		if (candidates == null) {
+			return new Filter() {
+				public boolean matches (int row) {
+					return like(values[row], pattern);
+				}
+			};
+		}
+		final BitSet rows = candidates;
+		return new Filter() {
+			public boolean matches (int row) {
+				return rows.get(row) && like(values[row], pattern);
+			}
+		};
+	}
+
+	/**
+	 * Returns a filter matching rows where the column matches the LIKE pattern formed by prefix + card name + suffix.
+	 */
+	public Filter likeName (final Column column, final String prefix, final String suffix) {
+		final String[] values = strings[column.ordinal()];
+		if (values == null) throw new IllegalArgumentException("Column is numeric: " + column);
+		final String[] names = strings[Column.name.ordinal()];
+		return new Filter() {
+			public boolean matches (int row) {
+				return like(values[row], prefix + names[row] + suffix);
+			}
+		};
+	}
+
+	/**
+	 * Returns a filter comparing a numeric column to a value.
+	 * @param operator One of '=', '<' or '>'.
+	 */
+	public Filter compare (Column column, final char operator, final int value) {
+		final int[] values = ints[column.ordinal()];
+		if (values == null) throw new IllegalArgumentException("Column is not numeric: " + column);
+		return new Filter() {
+			public boolean matches (int row) {
+				return compare(values[row] - value, operator);
+			}
+		};
+	}
+
+	/**
+	 * Returns a filter comparing a text column to a value.
+	 * @param operator One of '=', '<' or '>'.
+	 */
+	public Filter compare (Column column, final char operator, final String value) {
+		final String[] values = strings[column.ordinal()];
+		if (values == null) throw new IllegalArgumentException("Column is numeric: " + column);
+		return new Filter() {
+			public boolean matches (int row) {
+				return compare(values[row].compareTo(value), operator);
+			}
+		};
+	}
+
+	static private boolean compare (int difference, char operator) {
+		switch (operator) {
+		case '=':
+			return difference == 0;
+		case '<':
+			return difference < 0;
+		case '>':
+			return difference > 0;
+		}
+		throw new IllegalArgumentException("Invalid operator: " + operator);
+	}
+
+	static public Filter and (List<Filter> filters) {
+		final Filter[] array = filters.toArray(new Filter[filters.size()]);
+		if (array.length == 1) return array[0];
+		return new Filter() {
+			public boolean matches (int row) {
+				for (int i = 0, n = array.length; i < n; i++)
+					if (!array[i].matches(row)) return false;
+				return true;
+			}
+		};
+	}
+
+	static public Filter or (List<Filter> filters) {
+		final Filter[] array = filters.toArray(new Filter[filters.size()]);
+		if (array.length == 1) return array[0];
+		return new Filter() {
+			public boolean matches (int row) {
+				for (int i = 0, n = array.length; i < n; i++)
+					if (array[i].matches(row)) return true;
+				return false;
+			}
+		};
+	}
+
+	static public Filter not (final Filter filter) {
+		return new Filter() {
+			public boolean matches (int row) {
+				return !filter.matches(row);
+			}
+		};
+	}
+
+	/**
+	 * Returns true if the value matches the SQL LIKE pattern, where '%' matches any number of characters and '_' matches a single
+	 * character.
+	 */
+	static public boolean like (String value, String pattern) {
+		int v = 0, p = 0, valueLength = value.length(), patternLength = pattern.length();
+		int percentIndex = -1, percentValueIndex = 0;
+		while (v < valueLength) {
+			if (p < patternLength) {
+				char c = pattern.charAt(p);
+				if (c == '%') {
+					percentIndex = p++;
+					percentValueIndex = v;
+					continue;
+				}
+				if (c == '_' || c == value.charAt(v)) {
+					p++;
+					v++;
+					continue;
+				}
+			}
+			// Mismatch, backtrack to the last '%' and let it consume one more character.
+			if (percentIndex == -1) return false;
+			p = percentIndex + 1;
+			v = ++percentValueIndex;
+		}
+		while (p < patternLength && pattern.charAt(p) == '%')
+			p++;
+		return p == patternLength;
+	}
+
+	/**
+	 * Tests a single row of the index.
+	 */
+	static public interface Filter {
+		public boolean matches (int row);
+	}
+
+	static public enum Column {
+		name(false), //
+		englishName(false), //
+		type(false), //
+		englishType(false), //
+		legal(false), //
+		englishLegal(false), //
+		castingCost(false), //
+		color(false), //
+		manaProduced(false), //
+		power(true), //
+		toughness(true), //
+		convertedCost(true), //
+		setOrdinal(true);
+
+		public final boolean numeric;
+
+		Column (boolean numeric) {
+			this.numeric = numeric;
+		}
+	}
+
+	static public enum Attribute {
+		white, blue, black, red, green, colorless, gold, //
+		land, artifact, creature, sorcery, instant, enchantment, aura, planeswalker, //
+		common, uncommon, rare, mythicRare
+	}
+}
@@ -0,0 +1,429 @@
+package arcane;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import arcane.CardIndex.Column;
+import arcane.CardIndex.Filter;
+import arcane.util.CSVReader;
+
+import com.google.common.base.Predicate;
+
+/**
+ * A parsed card search. The search text is parsed once into an immutable tree of terms, which is compiled against the
+ * {@link CardIndex} into a single filter. Both steps are cached, so refreshing the same search does no parsing or compiling.
+ * <p>
+ * Terms separated by spaces are ANDed, "OR" between two terms ORs them. A term is either text to find in the name, type and/or
+ * legal text (with * wildcards, {cardname} and a leading - to negate) or name=value, name&lt;value or name&gt;value where name is
+ * one of power, toughness, cc, cost, pt, set, mana, rating or flags (or their abbreviations).
+ */
+public class CardQuery {
+	static private final int cacheSize = 64;
+	static private final Map<String, CardQuery> cache = new LinkedHashMap<String, CardQuery>(16, 0.75f, true) {
+		protected boolean removeEldestEntry (Entry<String, CardQuery> eldest) {
+			return size() > cacheSize;
+		}
+	};
+
+	public final String text;
+
+	private final Term root;
+	private final Set<String> sets;
+	private final boolean usesUserData;
+	private final Map<String, Compiled> compiled = new HashMap<String, Compiled>();
+
+	/**
+	 * Returns the query for the specified search text, parsing it only if it is not cached.
+	 */
+	static public CardQuery parse (String text) {
+		text = text.trim();
+		synchronized (cache) {
+			CardQuery query = cache.get(text);
+			if (query != null) return query;
+		}
+		CardQuery query = new CardQuery(text);
+		synchronized (cache) {
+			cache.put(text, query);
+		}
+		return query;
+	}
+
+	private CardQuery (String text) {
+		this.text = text;
+
+		List<List<Term>> groups = new ArrayList<List<Term>>();
+		groups.add(new ArrayList<Term>());
+		List<Term> globalTerms = new ArrayList<Term>();
+		Set<String> sets = new HashSet<String>();
+		boolean usesUserData = false;
+		try {
+			CSVReader reader = new CSVReader(new StringReader(text), " ", "\"", true, false);
+			List<String> fields = reader.getFields();
+			if (fields != null) {
+				boolean or = false;
+				for (String field : fields) {
+					Term term = null;
+					String[] nameValue = field.split("[=<>]");
+					if (nameValue.length == 2) {
+						String name = nameValue[0].toLowerCase();
+						String value = nameValue[1].toLowerCase();
+						char operator = field.charAt(name.length());
+						Column column = null;
+						if (name.equals("power") || name.equals("p"))
+							column = Column.power;
+						else if (name.equals("tough") || name.equals("toughness") || name.equals("t"))
+							column = Column.toughness;
+						else if (name.equals("ccost") || name.equals("cc") || name.equals("convertedcost")
+							|| name.equals("convertedcastingcost"))
+							column = Column.convertedCost;
+						else if (name.equals("r") || name.equals("rating") || name.equals("ratings")) {
+							if (value.length() != 1) continue;
+							try {
+								globalTerms.add(new Rating(operator, Integer.parseInt(value)));
+								usesUserData = true;
+							} catch (NumberFormatException ignored) {
+							}
+							continue;
+						} else if (name.equals("f") || name.equals("flag") || name.equals("flags")) {
+							for (int i = 0, n = value.length(); i < n; i++) {
+								globalTerms.add(new Flag(value.charAt(i)));
+								usesUserData = true;
+							}
+							continue;
+						} else if (name.equals("cost") || name.equals("c") || name.equals("castingcost")) {
+							StringBuffer buffer = new StringBuffer(value);
+							if (buffer.indexOf("{") == -1) {
+								for (int i = buffer.length() - 1; i > 0; i--) {
+									buffer.insert(i, '}');
+									buffer.insert(i + 1, '{');
+								}
+								buffer.insert(0, '{');
+								buffer.append('}');
+							}
+							String cost = buffer.toString();
+							if (cost.contains("*"))
+								term = new Like(Column.castingCost, cost.replace('*', '%'));
+							else
+								term = new CompareText(Column.castingCost, operator, cost);
+						} else if (name.equals("pt")) {
+							String[] split = value.replace('\\', '/').split("\\/");
+							if (split.length == 2) {
+								try {
+									List<Term> pt = new ArrayList<Term>(2);
+									pt.add(new Compare(Column.power, '=', Integer.parseInt(split[0])));
+									pt.add(new Compare(Column.toughness, '=', Integer.parseInt(split[1])));
+									term = new And(pt);
+								} catch (NumberFormatException ignored) {
+									continue;
+								}
+							}
+						} else if (name.equals("s") || name.equals("set")) {
+							sets.add(Arcane.getInstance().getMainSet(value));
+							continue;
+						} else if (name.equals("m") || name.equals("mana") || name.equals("manaproduced")) {
+							String colors = value;
+							if (colors.length() == 0) continue;
+							if (colors.equals("colorless")) colors = "c";
+							List<Term> mana = new ArrayList<Term>();
+							for (int i = 0, n = colors.length(); i < n; i++) {
+								char color = colors.charAt(i);
+								if (color == '\'') color = ' ';
+								mana.add(new Like(Column.manaProduced, "%" + color + "%"));
+							}
+							term = new And(mana);
+						}
+						if (column != null) {
+							try {
+								term = new Compare(column, operator, Integer.parseInt(value));
+							} catch (NumberFormatException ignored) {
+								continue;
+							}
+						}
+					}
+
+					if (term == null && field.length() > 0) {
+						if (field.equals("OR")) {
+							or = true;
+							continue;
+						}
+
+						boolean negate = field.charAt(0) == '-';
+						if (negate) field = field.substring(1);
+
+						// Replace * with % and surround with % only if not starting or ending with %.
+						String searchValue = field.replace('*', '%');
+						if (searchValue.length() <= 2
+							|| (searchValue.charAt(0) != '%' && searchValue.charAt(searchValue.length() - 1) != '%')) {
+							searchValue = "%" + searchValue + "%";
+						}
+						term = new Text(searchValue.toLowerCase(), negate);
+					}
+
+					if (term != null) {
+						if (or) groups.add(new ArrayList<Term>());
+						groups.get(groups.size() - 1).add(term);
+					}
+					or = false;
+				}
+			}
+			reader.close();
+		} catch (IOException ex) {
+			throw new ArcaneException("Error parsing search text.", ex);
+		}
+
+		List<Term> groupTerms = new ArrayList<Term>(groups.size());
+		for (List<Term> group : groups)
+			groupTerms.add(new And(group));
+		globalTerms.add(0, new Or(groupTerms));
+		root = new And(globalTerms);
+
+		this.sets = Collections.unmodifiableSet(sets);
+		this.usesUserData = usesUserData;
+	}
+
+	/**
+	 * Returns the main sets the search is restricted to with "set=", or an empty set if it was not restricted.
+	 */
+	public Set<String> getSets () {
+		return sets;
+	}
+
+	/**
+	 * Returns true if the query matches ratings or flags, which can change without the query changing.
+	 */
+	public boolean usesUserData () {
+		return usesUserData;
+	}
+
+	/**
+	 * Returns the query compiled into a single filter. Compiled queries are cached per set of options.
+	 * @param fields The fields searched by text terms.
+	 * @param matchEnglish If true, text terms also match the English name, type and legal text.
+	 */
+	public Compiled compile (CardIndex index, Set<Field> fields, boolean matchEnglish) {
+		String key = fields.toString() + matchEnglish;
+		synchronized (compiled) {
+			Compiled query = compiled.get(key);
+			if (query != null && query.index == index) return query;
+			query = new Compiled(index, root.compile(index, EnumSet.copyOf(fields), matchEnglish));
+			compiled.put(key, query);
+			return query;
+		}
+	}
+
+	public String toString () {
+		return text;
+	}
+
+	/**
+	 * The fields a text term can match.
+	 */
+	static public enum Field {
+		name, type, legal
+	}
+
+	/**
+	 * A query compiled against a card index. Evaluates rows of the index directly, or any card through {@link #apply(Card)}.
+	 */
+	static public class Compiled implements Predicate<Card> {
+		final CardIndex index;
+		private final Filter filter;
+
+		Compiled (CardIndex index, Filter filter) {
+			this.index = index;
+			this.filter = filter;
+		}
+
+		public boolean matches (int row) {
+			return filter == null || filter.matches(row);
+		}
+
+		public boolean apply (Card card) {
+			int row = index.getRow(card);
+			if (row == -1) return false;
+			return matches(row);
+		}
+	}
+
+	/**
+	 * A node in the query tree.
+	 */
+	static abstract private class Term {
+		/**
+		 * Returns the filter for this term, or null if the term matches every row.
+		 */
+		abstract Filter compile (CardIndex index, Set<Field> fields, boolean matchEnglish);
+	}
+
+	static private class And extends Term {
+		private final Term[] terms;
+
+		And (List<Term> terms) {
+			this.terms = terms.toArray(new Term[terms.size()]);
+		}
+
+		Filter compile (CardIndex index, Set<Field> fields, boolean matchEnglish) {
+			List<Filter> filters = new ArrayList<Filter>(terms.length);
+			for (Term term : terms) {
+				Filter filter = term.compile(index, fields, matchEnglish);
+				if (filter != null) filters.add(filter);
+			}
+			if (filters.isEmpty()) return null;
+			return CardIndex.and(filters);
+		}
+	}
+
+	static private class Or extends Term {
+		private final Term[] terms;
+
+		Or (List<Term> terms) {
+			this.terms = terms.toArray(new Term[terms.size()]);
+		}
+
+		Filter compile (CardIndex index, Set<Field> fields, boolean matchEnglish) {
+			List<Filter> filters = new ArrayList<Filter>(terms.length);
+			for (Term term : terms) {
+				Filter filter = term.compile(index, fields, matchEnglish);
+				if (filter == null) return null;
+				filters.add(filter);
+			}
+			if (filters.isEmpty()) return null;
+			return CardIndex.or(filters);
+		}
+	}
+
+	static private class Compare extends Term {
+		private final Column column;
+		private final char operator;
+		private final int value;
+
+		Compare (Column column, char operator, int value) {
+			this.column = column;
+			this.operator = operator;
+			this.value = value;
+		}
+
+		Filter compile (CardIndex index, Set<Field> fields, boolean matchEnglish) {
+			return index.compare(column, operator, value);
+		}
+	}
+
+	static private class CompareText extends Term {
+		private final Column column;
+		private final char operator;
+		private final String value;
+
+		CompareText (Column column, char operator, String value) {
+			this.column = column;
+			this.operator = operator;
+			this.value = value;
+		}
+
+		Filter compile (CardIndex index, Set<Field> fields, boolean matchEnglish) {
+			return index.compare(column, operator, value);
+		}
+	}
+
+	static private class Like extends Term {
+		private final Column column;
+		private final String pattern;
+
+		Like (Column column, String pattern) {
+			this.column = column;
+			this.pattern = pattern;
+		}
+
+		Filter compile (CardIndex index, Set<Field> fields, boolean matchEnglish) {
+			return index.like(column, pattern);
+		}
+	}
+
+	/**
+	 * Text searched for in the name, type and legal text, depending on the fields being searched.
+	 */
+	static private class Text extends Term {
+		private final String pattern;
+		private final boolean negate;
+
+		Text (String pattern, boolean negate) {
+			this.pattern = pattern;
+			this.negate = negate;
+		}
+
+		Filter compile (CardIndex index, Set<Field> fields, boolean matchEnglish) {
+			List<Filter> filters = new ArrayList<Filter>();
+			if (fields.contains(Field.name)) filters.add(compile(index, Column.name, Column.englishName, matchEnglish));
+			if (fields.contains(Field.type)) filters.add(compile(index, Column.type, Column.englishType, matchEnglish));
+			if (fields.contains(Field.legal)) filters.add(compile(index, Column.legal, Column.englishLegal, matchEnglish));
+			if (pattern.indexOf("{cardname}") != -1) {
+				String[] subText = pattern.split("\\{cardname\\}", -1);
+				List<Filter> columns = new ArrayList<Filter>(2);
+				columns.add(index.likeName(Column.legal, subText[0], subText[1]));
+				if (matchEnglish) columns.add(index.likeName(Column.englishLegal, subText[0], subText[1]));
+				filters.add(negate ? CardIndex.not(CardIndex.and(columns)) : CardIndex.or(columns));
+			}
+			if (filters.isEmpty()) return null;
+			return negate ? CardIndex.and(filters) : CardIndex.or(filters);
+		}
+
+		private Filter compile (CardIndex index, Column column, Column englishColumn, boolean matchEnglish) {
+			List<Filter> columns = new ArrayList<Filter>(2);
+			columns.add(index.like(column, pattern));
+			if (matchEnglish) columns.add(index.like(englishColumn, pattern));
+			if (negate) return CardIndex.not(CardIndex.and(columns));
+			return CardIndex.or(columns);
+		}
+	}
+
+	static private class Rating extends Term {
+		private final char operator;
+		private final int value;
+
+		Rating (char operator, int value) {
+			this.operator = operator;
+			this.value = value;
+		}
+
+		Filter compile (final CardIndex index, Set<Field> fields, boolean matchEnglish) {
+			return new Filter() {
+				public boolean matches (int row) {
+					int rating = index.getCard(row).rating;
+					switch (operator) {
+					case '<':
+						return rating < value;
+					case '>':
+						return rating > value;
+					default:
+						return rating == value;
+					}
+				}
+			};
+		}
+	}
+
+	static private class Flag extends Term {
+		private final char flag;
+
+		Flag (char flag) {
+			this.flag = flag;
+		}
+
+		Filter compile (final CardIndex index, Set<Field> fields, boolean matchEnglish) {
+			return new Filter() {
+				public boolean matches (int row) {
+					return index.getCard(row).flags.indexOf(flag) != -1;
+				}
+			};
+		}
+	}
+}
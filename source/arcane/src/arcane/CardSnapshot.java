@@ -0,0 +1,176 @@
+package arcane;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary copy of the cards parsed from "cards.csv", so startup can skip parsing the CSV and constructing each card. The snapshot
+ * is keyed on the modification time and length of its source files and is ignored when any of them change. Strings are stored
+ * once in a pool and referenced by index.
+ */
+class CardSnapshot {
+	static private final int magic = 0x41524353;
+	static private final int version = 1;
+
+	private final File file;
+	private final long[] stamps;
+
+	CardSnapshot (File file, File... sources) {
+		this.file = file;
+		stamps = new long[sources.length * 2];
+		for (int i = 0, n = sources.length; i < n; i++) {
+			stamps[i * 2] = sources[i].lastModified();
+			stamps[i * 2 + 1] = sources[i].length();
+		}
+	}
+
+	/**
+	 * Returns the cards in the snapshot, or null if there is no snapshot or it is out of date.
+	 */
+	List<Card> load () {
+		if (!file.exists()) return null;
+		try {
+			// Check the header before mapping the file, so a stale snapshot is not left mapped and can be overwritten.
+			DataInputStream header = new DataInputStream(new FileInputStream(file));
+			try {
+				if (header.readInt() != magic || header.readInt() != version) return null;
+				if (header.readInt() != stamps.length) return null;
+				for (int i = 0, n = stamps.length; i < n; i++)
+					if (header.readLong() != stamps[i]) return null;
+			} finally {
+				header.close();
+			}
+
+			FileInputStream input = new FileInputStream(file);
+			try {
+				FileChannel channel = input.getChannel();
+				MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+				buffer.position(12 + stamps.length * 8);
+
+				String[] strings = new String[buffer.getInt()];
+				byte[] bytes = new byte[256];
+				for (int i = 0, n = strings.length; i < n; i++) {
+					int length = buffer.getInt();
+					if (bytes.length < length) bytes = new byte[length];
+					buffer.get(bytes, 0, length);
+					strings[i] = new String(bytes, 0, length, "UTF-8");
+				}
+
+				Arcane arcane = Arcane.getInstance();
+				int count = buffer.getInt();
+				List<Card> cards = new ArrayList<Card>(count);
+				for (int i = 0; i < count; i++) {
+					Card card = new Card();
+					card.name = strings[buffer.getInt()];
+					card.englishName = card.name.intern();
+					card.set = arcane.getMainSet(strings[buffer.getInt()]);
+					card.color = strings[buffer.getInt()];
+					card.type = strings[buffer.getInt()];
+					card.englishType = card.type;
+					card.typeSpecialCharacters = strings[buffer.getInt()];
+					card.pt = strings[buffer.getInt()];
+					card.power = buffer.getInt();
+					card.toughness = buffer.getInt();
+					card.rarity = strings[buffer.getInt()];
+					card.castingCost = strings[buffer.getInt()];
+					card.legal = strings[buffer.getInt()];
+					card.legalSpecialCharacters = strings[buffer.getInt()];
+					card.convertedCastingCost = buffer.getInt();
+					card.creatureType = strings[buffer.getInt()];
+					card.version = strings[buffer.getInt()];
+					card.collectorNumber = strings[buffer.getInt()];
+					if (card.set == null) return null;
+					cards.add(card);
+				}
+				return cards;
+			} finally {
+				input.close();
+			}
+		} catch (Exception ex) {
+			Arcane.getInstance().logError("Error reading card snapshot: " + file.getAbsolutePath(), ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the cards to the snapshot. Failures are logged, since the snapshot is only a cache.
+	 */
+	void save (List<Card> cards) {
+		File tempFile = new File(file.getPath() + ".tmp");
+		try {
+			Map<String, Integer> stringToIndex = new HashMap<String, Integer>();
+			List<String> strings = new ArrayList<String>();
+			int[] values = new int[cards.size() * 16];
+			int i = 0;
+			for (Card card : cards) {
+				values[i++] = index(card.name, stringToIndex, strings);
+				values[i++] = index(card.set, stringToIndex, strings);
+				values[i++] = index(card.color, stringToIndex, strings);
+				values[i++] = index(card.type, stringToIndex, strings);
+				values[i++] = index(card.typeSpecialCharacters, stringToIndex, strings);
+				values[i++] = index(card.pt, stringToIndex, strings);
+				values[i++] = card.power;
+				values[i++] = card.toughness;
+				values[i++] = index(card.rarity, stringToIndex, strings);
+				values[i++] = index(card.castingCost, stringToIndex, strings);
+				values[i++] = index(card.legal, stringToIndex, strings);
+				values[i++] = index(card.legalSpecialCharacters, stringToIndex, strings);
+				values[i++] = card.convertedCastingCost;
+				values[i++] = index(card.creatureType, stringToIndex, strings);
+				values[i++] = index(card.version, stringToIndex, strings);
+				values[i++] = index(card.collectorNumber, stringToIndex, strings);
+			}
+
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536));
+			try {
+				output.writeInt(magic);
+				output.writeInt(version);
+				output.writeInt(stamps.length);
+				for (long stamp : stamps)
+					output.writeLong(stamp);
+
+				output.writeInt(strings.size());
+				for (String string : strings) {
+					byte[] bytes = string.getBytes("UTF-8");
+					output.writeInt(bytes.length);
+					output.write(bytes);
+				}
+
+				output.writeInt(cards.size());
+				for (int value : values)
+					output.writeInt(value);
+			} finally {
+				output.close();
+			}
+
+			file.delete();
+			if (!tempFile.renameTo(file)) throw new IOException("Unable to rename: " + tempFile.getAbsolutePath());
+		} catch (IOException ex) {
+			tempFile.delete();
+			Arcane.getInstance().logError("Error writing card snapshot: " + file.getAbsolutePath(), ex);
+		}
+	}
+
+	static private int index (String value, Map<String, Integer> stringToIndex, List<String> strings) {
+		if (value == null) value = "";
+		Integer index = stringToIndex.get(value);
+		if (index == null) {
+			index = strings.size();
+			stringToIndex.put(value, index);
+			strings.add(value);
+		}
+		return index;
+	}
+}
@@ -3,7 +3,8 @@ package arcane;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.Map;
+
+import arcane.util.IntIntMap;
 
 public interface Decklist {
 	public String getName ();
@@ -16,7 +17,11 @@ public interface Decklist {
 
 	public List<DecklistCard> getDecklistCards ();
 
-	public void save (List<Card> deckCards, Map<Card, Integer> deckCardToQty, List<Card> sideCards, Map<Card, Integer> sideCardToQty) throws IOException;
+	/**
+	 * @param deckCardToQty Card ID to quantity, or null if deckCards is not collapsed.
+	 * @param sideCardToQty Card ID to quantity, or null if sideCards is not collapsed.
+	 */
+	public void save (List<Card> deckCards, IntIntMap deckCardToQty, List<Card> sideCards, IntIntMap sideCardToQty) throws IOException;
 
 	public String getData ();
 }
@@ -58,6 +58,9 @@ public final class DecklistCard {
 	}
 
 	public Card getCard () {
+		// The ID is only valid if the name, set or version have not been changed.
+		Card card = arcane.getCard(id);
+		if (card.name.equals(name) && card.set.equals(set) && card.version.equals(version)) return card;
 		return arcane.getCard(name, set, version);
 	}
 
@@ -9,9 +9,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -23,6 +21,8 @@ import org.antlr.stringtemplate.StringTemplateGroup;
 
 import arcane.util.CSVReader;
 import arcane.util.FileUtil;
+import arcane.util.IntIntMap;
+import arcane.util.IntList;
 
 public class DecklistFile implements Decklist {
 	static private StringTemplateGroup templates = new StringTemplateGroup("templates", "templates");
@@ -65,14 +65,10 @@ public class DecklistFile implements Decklist {
 	}
 
 	public int[] getCardIDs (boolean sideboard) {
-		List<Integer> cardIDs = new ArrayList<Integer>();
+		IntList cardIDs = new IntList(decklistCards.size());
 		for (DecklistCard card : decklistCards)
 			if (card.isSideboard() == sideboard) cardIDs.add(card.getId());
-		int[] ids = new int[cardIDs.size()];
-		int i = 0;
-		for (Integer id : cardIDs)
-			ids[i++] = id;
-		return ids;
+		return cardIDs.toArray();
 	}
 
 	private void openDEC (BufferedReader reader) throws IOException {
@@ -274,63 +270,24 @@ public class DecklistFile implements Decklist {
 		return file.getAbsolutePath();
 	}
 
-	public Map<Card, Integer> computeCardToQty(List<Card> deckCards){
-		Map<Card, Integer> deckCardToQty = new HashMap<Card, Integer>();
-		for (Card card : deckCards) {
-			Integer qty = deckCardToQty.get(card);
-			if (qty == null) {
-				qty = 0;
-			}
-			qty++;
-			deckCardToQty.put(card, qty);
-		}
+	/**
+	 * Returns card ID to the number of times the card occurs in the list.
+	 */
+	public IntIntMap computeCardToQty (List<Card> deckCards) {
+		IntIntMap deckCardToQty = new IntIntMap(deckCards.size());
+		for (Card card : deckCards)
+			deckCardToQty.increment(card.id, 1);
 		return deckCardToQty;
 	}
 
-	public void save (List<Card> deckCards, Map<Card, Integer> deckCardToQty, List<Card> sideCards, Map<Card, Integer> sideCardToQty) throws IOException {
+	public void save (List<Card> deckCards, IntIntMap deckCardToQty, List<Card> sideCards, IntIntMap sideCardToQty) throws IOException {
 		decklistCards.clear();
 
 		List<Card> templateDeckCards = new ArrayList<Card>();
-		if(deckCardToQty != null){
-			for (Card card : deckCards){
-				int qty = deckCardToQty.get(card);
-				for (int i = 0; i < qty; i++)
-					decklistCards.add(new DecklistCard(card, false));
-
-				templateDeckCards.add(new TemplateCard(card, qty));
-			}
-		} else{
-			Map<Card, Integer> tmpDeckCardToQty = computeCardToQty(deckCards);
-			for (Map.Entry<Card, Integer> entry : tmpDeckCardToQty.entrySet()){
-			    	Card card = entry.getKey();
-				int qty = entry.getValue();
-				for (int i = 0; i < qty; i++)
-					decklistCards.add(new DecklistCard(card, false));
-
-				templateDeckCards.add(new TemplateCard(card, qty));
-			}
-		}
+		addDecklistCards(deckCards, deckCardToQty, false, templateDeckCards);
 
 		List<Card> templateSideCards = new ArrayList<Card>();
-		if(deckCardToQty != null){
-			for (Card card : sideCards){
-				int qty = sideCardToQty.get(card);
-				for (int i = 0; i < qty; i++)
-					decklistCards.add(new DecklistCard(card, true));
-
-				templateSideCards.add(new TemplateCard(card, qty));
-			}
-		} else{
-			Map<Card, Integer> tmpSideCardToQty = computeCardToQty(sideCards);
-			for (Map.Entry<Card, Integer> entry : tmpSideCardToQty.entrySet()){
-			    	Card card = entry.getKey();
-				int qty = entry.getValue();
-				for (int i = 0; i < qty; i++)
-					decklistCards.add(new DecklistCard(card, true));
-
-				templateSideCards.add(new TemplateCard(card, qty));
-			}
-		}
+		addDecklistCards(sideCards, sideCardToQty, true, templateSideCards);
 
 		StringTemplate template = templates.getInstanceOf(templateName);
 		template.setAttribute("deckName", file.getName().replaceAll("\\.[^\\.]*$", ""));
@@ -342,6 +299,25 @@ public class DecklistFile implements Decklist {
 		writer.close();
 	}
 
+	/**
+	 * @param cardToQty May be null if the cards are not collapsed, in which case each card is counted.
+	 */
+	private void addDecklistCards (List<Card> cards, IntIntMap cardToQty, boolean sideboard, List<Card> templateCards) {
+		IntIntMap added = null;
+		if (cardToQty == null) {
+			cardToQty = computeCardToQty(cards);
+			added = new IntIntMap(cardToQty.size());
+		}
+		for (Card card : cards) {
+			if (added != null && added.increment(card.id, 1) > 1) continue;
+			int qty = cardToQty.get(card.id, 0);
+			for (int i = 0; i < qty; i++)
+				decklistCards.add(new DecklistCard(card, sideboard));
+
+			templateCards.add(new TemplateCard(card, qty));
+		}
+	}
+
 	public void addCards (List<Card> newCards) {
 		try {
 			List<Card>[] decklistCards = DecklistCard.getCards(getDecklistCards());
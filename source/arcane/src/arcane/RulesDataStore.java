@@ -9,14 +9,19 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import arcane.ui.ManaSymbols;
-import arcane.ui.util.ProgressDialog;
+import arcane.ui.util.Progress;
 import arcane.util.DataStore;
 import arcane.util.InputStreamMonitor;
+import arcane.util.TrigramIndex;
 
 public class RulesDataStore extends DataStore<RulesDataStore.RulesDataStoreConnection> {
+	private String[][] textRows;
+	private TrigramIndex textIndex;
+
 	public RulesDataStore () throws SQLException {
 		super("data/rulesdb/rules", "rules", false);
 		addColumn("rule VARCHAR (32)");
@@ -45,6 +50,7 @@ public class RulesDataStore extends DataStore<RulesDataStore.RulesDataStoreConne
 		private final PreparedStatement getSubrules;
 		private final PreparedStatement getSubruleRule;
 		private final PreparedStatement getRules;
+		private final PreparedStatement getAllRules;
 
 		private RulesDataStoreConnection () throws SQLException {
 			addRule = prepareStatement("INSERT INTO :table: (rule, subrule, text) VALUES (?, ?, ?)");
@@ -52,13 +58,14 @@ public class RulesDataStore extends DataStore<RulesDataStore.RulesDataStoreConne
 			getSubruleRule = prepareStatement("SELECT rule FROM :table: WHERE subrule=?");
 			getSubrules = prepareStatement("SELECT subrule, text FROM :table: WHERE rule=? AND subrule IS NOT NULL");
 			getRules = prepareStatement("SELECT rule, text FROM :table: WHERE subrule IS NULL");
+			getAllRules = prepareStatement("SELECT rule, subrule, text FROM :table: ORDER BY rule");
 		}
 
 		public void addRule (String rule, String subrule, String text) throws SQLException {
 			addRule.setString(1, rule);
 			addRule.setString(2, subrule);
 			addRule.setString(3, text);
-			addRule.executeUpdate();
+			addBatch(addRule);
 		}
 
 		public String getRuleText (String rule) throws SQLException {
@@ -91,9 +98,45 @@ public class RulesDataStore extends DataStore<RulesDataStore.RulesDataStoreConne
 				subrules.add(new String[] {set.getString(1), set.getString(2)});
 			return subrules;
 		}
+
+		/**
+		 * Returns the rule and subrule of every row whose text contains all of the specified strings, ordered by rule. The search
+		 * uses a trigram index of the text, which is built on first use.
+		 */
+		public List<String[]> search (List<String> texts) throws SQLException {
+			String[][] textRows;
+			TrigramIndex textIndex;
+			synchronized (RulesDataStore.this) {
+				if (RulesDataStore.this.textIndex == null) {
+					List<String[]> rows = new ArrayList<String[]>();
+					ResultSet set = getAllRules.executeQuery();
+					while (set.next())
+						rows.add(new String[] {set.getString(1), set.getString(2), set.getString(3)});
+					set.close();
+					String[] text = new String[rows.size()];
+					for (int i = 0, n = text.length; i < n; i++)
+						text[i] = rows.get(i)[2];
+					RulesDataStore.this.textRows = rows.toArray(new String[rows.size()][]);
+					RulesDataStore.this.textIndex = new TrigramIndex(text);
+				}
+				textRows = RulesDataStore.this.textRows;
+				textIndex = RulesDataStore.this.textIndex;
+			}
+
+			BitSet rows = new BitSet(textRows.length);
+			rows.set(0, textRows.length);
+			for (String text : texts) {
+				if (rows.isEmpty()) break;
+				rows.and(textIndex.search(text));
+			}
+			List<String[]> results = new ArrayList<String[]>(rows.cardinality());
+			for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1))
+				results.add(new String[] {textRows[row][0], textRows[row][1]});
+			return results;
+		}
 	}
 
-	void populate (final ProgressDialog dialog, String dataDir) {
+	void populate (final Progress dialog, String dataDir) {
 		try {
 			RulesDataStoreConnection conn = newConnection();
 			if (conn.getCount() > 0) {
@@ -102,6 +145,7 @@ public class RulesDataStore extends DataStore<RulesDataStore.RulesDataStoreConne
 			}
 			dialog.setValue(0);
 			dialog.setMessage("Loading rules data...");
+			conn.beginBulkLoad(500);
 			InputStreamMonitor stream = new InputStreamMonitor(new FileInputStream(dataDir + "rule-general.txt")) {
 				protected void updateProgress () {
 					dialog.setValue(getPercentageComplete());
@@ -186,8 +230,13 @@ public class RulesDataStore extends DataStore<RulesDataStore.RulesDataStoreConne
 					if (line.length() == 0) break;
 				}
 			}
+			conn.endBulkLoad();
 			conn.close();
 			createIndexes();
+			synchronized (this) {
+				textRows = null;
+				textIndex = null;
+			}
 		} catch (Exception ex) {
 			throw new ArcaneException("Error populating rules database.", ex);
 		}
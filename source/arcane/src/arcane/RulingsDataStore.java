@@ -12,7 +12,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import arcane.ui.ManaSymbols;
-import arcane.ui.util.ProgressDialog;
+import arcane.ui.util.Progress;
 import arcane.util.DataStore;
 import arcane.util.InputStreamMonitor;
 import arcane.util.DataStore.DataStoreConnection;
@@ -48,7 +48,7 @@ public class RulingsDataStore extends DataStore<RulingsDataStore.RulingsDataStor
 		public void addRuling (String name, String ruling) throws SQLException {
 			addRuling.setString(1, name);
 			addRuling.setString(2, ruling);
-			addRuling.executeUpdate();
+			addBatch(addRuling);
 		}
 
 		public List<String> getRulings (String name) throws SQLException {
@@ -62,7 +62,7 @@ public class RulingsDataStore extends DataStore<RulingsDataStore.RulingsDataStor
 		}
 	}
 
-	void populate (final ProgressDialog dialog, String dataDir) {
+	void populate (final Progress dialog, String dataDir) {
 		try {
 			RulingsDataStoreConnection conn = newConnection();
 			if (conn.getCount() > 0) {
@@ -71,6 +71,7 @@ public class RulingsDataStore extends DataStore<RulingsDataStore.RulingsDataStor
 			}
 			dialog.setValue(0);
 			dialog.setMessage("Loading rulings data...");
+			conn.beginBulkLoad(500);
 			InputStreamMonitor stream = new InputStreamMonitor(new FileInputStream(dataDir + "rule-cards.txt")) {
 				protected void updateProgress () {
 					dialog.setValue(getPercentageComplete());
@@ -127,6 +128,7 @@ public class RulingsDataStore extends DataStore<RulingsDataStore.RulingsDataStor
 					conn.addRuling(name, ruling);
 				}
 			}
+			conn.endBulkLoad();
 			conn.close();
 			createIndexes();
 		} catch (Exception ex) {
@@ -488,5 +488,7 @@ public class ArcaneFrame extends JFrame {
 			if (!exit()) return;
 		}
 		super.processWindowEvent(event);
+		// Rule data is not needed to show the UI, so it is loaded afterward.
+		if (event.getID() == WindowEvent.WINDOW_OPENED) arcane.loadRuleDataInBackground();
 	}
 }
@@ -6,7 +6,11 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import javax.swing.JEditorPane;
@@ -23,12 +27,21 @@ import arcane.ArcanePreferences.CardFontFamily;
 import arcane.ArcanePreferences.CardFontSize;
 import arcane.Card;
 import arcane.ui.util.UI;
+import arcane.util.PriorityExecutor.Droppable;
+import arcane.util.PriorityExecutor.Lane;
 import arcane.util.Util;
 
 public abstract class CardInfoPane extends JEditorPane {
+	static private final int htmlCacheSize = 256;
+
 	private Arcane arcane = Arcane.getInstance();
 	private ArcanePreferences prefs = arcane.getPrefs();
-	private Card currentCard;
+	private volatile Card currentCard;
+	private final Map<String, String> htmlCache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+		protected boolean removeEldestEntry (Entry<String, String> eldest) {
+			return size() > htmlCacheSize;
+		}
+	};
 	private boolean showSingleSet;
 
 	public CardInfoPane () {
@@ -65,128 +78,172 @@ public abstract class CardInfoPane extends JEditorPane {
 		if (isCurrentCard(card)) return;
 		currentCard = card;
 
-		Util.threadPool.submit(new Runnable() {
+		final String html = getCachedHTML(card);
+		if (html != null) {
+			setText(html);
+			setCaretPosition(0);
+		}
+
+		Util.threadPool.execute(Lane.render, new Droppable() {
 			public void run () {
 				if (!card.equals(currentCard)) return;
+				if (html == null) showCard(card);
+				cardShown(card);
+			}
 
-				String castingCost = UI.getDisplayManaCost(card.castingCost);
-				castingCost = ManaSymbols.replaceSymbolsWithHTML(castingCost, false);
+			public void dropped () {
+				// The card is still shown, so it must still be rendered.
+				if (card.equals(currentCard)) Util.threadPool.execute(Lane.load, this);
+			}
+		});
+	}
 
-				int symbolCount = 0;
-				int offset = 0;
-				while ((offset = castingCost.indexOf("<img", offset) + 1) != 0)
-					symbolCount++;
+	/**
+	 * Renders the cards in the background so they are shown without delay when selected.
+	 */
+	public void prefetch (final List<Card> cards) {
+		if (cards.isEmpty() || !arcane.isRulingsLoaded()) return;
+		Util.threadPool.execute(Lane.background, new Runnable() {
+			public void run () {
+				for (Card card : cards)
+					getHTML(card);
+			}
+		});
+	}
 
-				String legal = card.legal;
-				legal = legal.replaceAll("#([^#]+)#", "<i>$1</i>");
-				legal = legal.replaceAll("\\s*//\\s*", "<hr width='50%'>");
-				legal = legal.replace("\r\n", "<div style='font-size:5pt'></div>");
+	private void showCard (final Card card) {
+		// The card is shown without rulings until they are loaded.
+		boolean rulingsLoaded = arcane.isRulingsLoaded();
+		final String html = rulingsLoaded ? getHTML(card) : renderHTML(card, false);
 
-				List<String> rulings;
-				try {
-					rulings = arcane.getRulingsDataStoreConnection().getRulings(card.englishName);
-				} catch (SQLException ex) {
-					throw new ArcaneException("Error getting ruling.", ex);
-				}
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run () {
+				if (!card.equals(currentCard)) return;
+				setText(html);
+				setCaretPosition(0);
+			}
+		});
 
-				boolean smallImages = true;
-				int fontSize = 11;
-				if (prefs.fontSize == CardFontSize.medium) {
-					fontSize = 13;
-					smallImages = false;
-				} else if (prefs.fontSize == CardFontSize.large) {
-					fontSize = 15;
-					smallImages = false;
+		if (!rulingsLoaded) {
+			arcane.runWhenRulingsLoaded(new Runnable() {
+				public void run () {
+					if (card.equals(currentCard)) showCard(card);
 				}
+			});
+		}
+	}
 
-				String fontFamily = "tahoma";
-				if (prefs.fontFamily == CardFontFamily.arial)
-					fontFamily = "arial";
-				else if (prefs.fontFamily == CardFontFamily.verdana) {
-					fontFamily = "verdana";
-				}
+	private String getCachedHTML (Card card) {
+		synchronized (htmlCache) {
+			return htmlCache.get(getCacheKey(card));
+		}
+	}
 
-				final StringBuffer buffer = new StringBuffer(512);
-				buffer.append("<html><body style='font-family:");
-				buffer.append(fontFamily);
-				buffer.append(";font-size:");
-				buffer.append(fontSize);
-				buffer.append("pt;margin:0px 1px 0px 1px'>");
-				buffer.append("<table cellspacing=0 cellpadding=0 border=0 width='100%'>");
-				buffer.append("<tr><td valign='top'><b>");
-				buffer.append(card.name);
-				buffer.append("</b></td><td align='right' valign='top' style='width:");
-				buffer.append(symbolCount * 11 + 1);
-				buffer.append("px'>");
-				buffer.append(castingCost);
-				buffer.append("</td></tr></table>");
-				buffer.append("<table cellspacing=0 cellpadding=0 border=0 width='100%'><tr><td>");
-				buffer.append(card.type);
-				buffer.append("</td><td align='right'>");
-				if (!showSingleSet) {
-					Set<String> sets = arcane.getSets(card.name);
-					int i = 1, n = sets.size();
-					for (String set : sets) {
-						boolean currentSet = card.set.equals(set);
-						if (currentSet) {
-							switch (card.rarity.charAt(0)) {
-							case 'M':
-								buffer.append("<b color='#F9AD0A'>");
-								break;
-							case 'R':
-								buffer.append("<b color='#E1D519'>");
-								break;
-							case 'U':
-								buffer.append("<b color='silver'>");
-								break;
-							case 'C':
-								buffer.append("<b color='black'>");
-								break;
-							}
-						} else
-							buffer.append("<span>");
-						buffer.append(set.toUpperCase());
-						if (currentSet) buffer.append("</b>");
-						if (i < n) buffer.append(",");
-						if (!currentSet) buffer.append("<span>");
-						i++;
-					}
-				}
-				buffer.append("</td></tr></table>");
-				if (legal.length() > 0) {
-					buffer.append("<br>");
-					buffer.append(ManaSymbols.replaceSymbolsWithHTML(legal, smallImages));
-				}
-				if (!"".equals(card.version) || card.pt.length() > 0) {
-					buffer.append("<table cellspacing=0 cellpadding=0 border=0 width='100%'><tr><td>");
-					if (!"".equals(card.version)) {
-						buffer.append(" (");
-						buffer.append(card.version);
-						buffer.append(')');
-					}
-					buffer.append("</td><td align='right'>");
-					if (card.pt.length() > 0) {
-						buffer.append("<b>");
-						buffer.append(card.pt.replace('\\', '/'));
-						buffer.append("</b>");
-					}
-					buffer.append("</td></tr></table>");
-				}
-				buffer.append("<hr>");
-				if (card.rating > 0 || card.flags.length() > 0) {
-					buffer.append("<table cellspacing=0 cellpadding=0 border=0 width='100%'><tr><td>");
-					for (int ii = 0, nn = card.rating; ii < nn; ii++)
-						buffer.append("<img src='file:images/star.png' width=14 height=14>");
-					buffer.append("</td><td align='right'>");
-					for (int ii = 0, nn = card.flags.length(); ii < nn; ii++) {
-						buffer.append("<img src='file:images/flag_");
-						buffer.append(card.flags.charAt(ii));
-						buffer.append(".png' width=14 height=14>");
-					}
-					buffer.append("</td></tr></table>");
-				}
-				if (showSingleSet) {
+	private String getHTML (Card card) {
+		String key = getCacheKey(card);
+		String html;
+		synchronized (htmlCache) {
+			html = htmlCache.get(key);
+		}
+		if (html == null) {
+			html = renderHTML(card, true);
+			synchronized (htmlCache) {
+				htmlCache.put(key, html);
+			}
+		}
+		return html;
+	}
+
+	/**
+	 * Returns a key for everything the rendered HTML depends on that can change.
+	 */
+	private String getCacheKey (Card card) {
+		StringBuffer buffer = new StringBuffer(32);
+		buffer.append(card.id);
+		buffer.append(',');
+		buffer.append(prefs.fontSize);
+		buffer.append(',');
+		buffer.append(prefs.fontFamily);
+		buffer.append(',');
+		buffer.append(showSingleSet);
+		buffer.append(',');
+		buffer.append(card.rating);
+		buffer.append(',');
+		buffer.append(card.flags);
+		buffer.append(',');
+		buffer.append(card.price);
+		buffer.append(',');
+		buffer.append(card.shopUrl);
+		return buffer.toString();
+	}
+
+	private String renderHTML (Card card, boolean withRulings) {
+		String castingCost = UI.getDisplayManaCost(card.castingCost);
+		castingCost = ManaSymbols.replaceSymbolsWithHTML(castingCost, false);
+
+		int symbolCount = 0;
+		int offset = 0;
+		while ((offset = castingCost.indexOf("<img", offset) + 1) != 0)
+			symbolCount++;
+
+		String legal = card.legal;
+		legal = legal.replaceAll("#([^#]+)#", "<i>$1</i>");
+		legal = legal.replaceAll("\\s*//\\s*", "<hr width='50%'>");
+		legal = legal.replace("\r\n", "<div style='font-size:5pt'></div>");
+
+		List<String> rulings = Collections.emptyList();
+		if (withRulings) {
+			try {
+				rulings = arcane.getRulingsDataStoreConnection().getRulings(card.englishName);
+			} catch (SQLException ex) {
+				throw new ArcaneException("Error getting ruling.", ex);
+			}
+		}
+
+		boolean smallImages = true;
+		int fontSize = 11;
+		if (prefs.fontSize == CardFontSize.medium) {
+			fontSize = 13;
+			smallImages = false;
+		} else if (prefs.fontSize == CardFontSize.large) {
+			fontSize = 15;
+			smallImages = false;
+		}
+
+		String fontFamily = "tahoma";
+		if (prefs.fontFamily == CardFontFamily.arial)
+			fontFamily = "arial";
+		else if (prefs.fontFamily == CardFontFamily.verdana) {
+			fontFamily = "verdana";
+		}
+
+		StringBuffer buffer = new StringBuffer(512);
+		buffer.append("<html><body style='font-family:");
+		buffer.append(fontFamily);
+		buffer.append(";font-size:");
+		buffer.append(fontSize);
+		buffer.append("pt;margin:0px 1px 0px 1px'>");
+		buffer.append("<table cellspacing=0 cellpadding=0 border=0 width='100%'>");
+		buffer.append("<tr><td valign='top'><b>");
+		buffer.append(card.name);
+		buffer.append("</b></td><td align='right' valign='top' style='width:");
+		buffer.append(symbolCount * 11 + 1);
+		buffer.append("px'>");
+		buffer.append(castingCost);
+		buffer.append("</td></tr></table>");
+		buffer.append("<table cellspacing=0 cellpadding=0 border=0 width='100%'><tr><td>");
+		buffer.append(card.type);
+		buffer.append("</td><td align='right'>");
+		if (!showSingleSet) {
+			Set<String> sets = arcane.getSets(card.name);
+			int i = 1, n = sets.size();
+			for (String set : sets) {
+				boolean currentSet = card.set.equals(set);
+				if (currentSet) {
 					switch (card.rarity.charAt(0)) {
+					case 'M':
+						buffer.append("<b color='#F9AD0A'>");
+						break;
 					case 'R':
 						buffer.append("<b color='#E1D519'>");
 						break;
@@ -197,48 +254,91 @@ public abstract class CardInfoPane extends JEditorPane {
 						buffer.append("<b color='black'>");
 						break;
 					}
-					buffer.append(card.set.toUpperCase());
-					buffer.append("</b><br>");
-				}
-				if (!card.name.equals(card.englishName)) {
-					buffer.append(card.englishName);
-					buffer.append("<br>");
+				} else
+					buffer.append("<span>");
+				buffer.append(set.toUpperCase());
+				if (currentSet) buffer.append("</b>");
+				if (i < n) buffer.append(",");
+				if (!currentSet) buffer.append("<span>");
+				i++;
+			}
+		}
+		buffer.append("</td></tr></table>");
+		if (legal.length() > 0) {
+			buffer.append("<br>");
+			buffer.append(ManaSymbols.replaceSymbolsWithHTML(legal, smallImages));
+		}
+		if (!"".equals(card.version) || card.pt.length() > 0) {
+			buffer.append("<table cellspacing=0 cellpadding=0 border=0 width='100%'><tr><td>");
+			if (!"".equals(card.version)) {
+				buffer.append(" (");
+				buffer.append(card.version);
+				buffer.append(')');
+			}
+			buffer.append("</td><td align='right'>");
+			if (card.pt.length() > 0) {
+				buffer.append("<b>");
+				buffer.append(card.pt.replace('\\', '/'));
+				buffer.append("</b>");
+			}
+			buffer.append("</td></tr></table>");
+		}
+		buffer.append("<hr>");
+		if (card.rating > 0 || card.flags.length() > 0) {
+			buffer.append("<table cellspacing=0 cellpadding=0 border=0 width='100%'><tr><td>");
+			for (int ii = 0, nn = card.rating; ii < nn; ii++)
+				buffer.append("<img src='file:images/star.png' width=14 height=14>");
+			buffer.append("</td><td align='right'>");
+			for (int ii = 0, nn = card.flags.length(); ii < nn; ii++) {
+				buffer.append("<img src='file:images/flag_");
+				buffer.append(card.flags.charAt(ii));
+				buffer.append(".png' width=14 height=14>");
+			}
+			buffer.append("</td></tr></table>");
+		}
+		if (showSingleSet) {
+			switch (card.rarity.charAt(0)) {
+			case 'R':
+				buffer.append("<b color='#E1D519'>");
+				break;
+			case 'U':
+				buffer.append("<b color='silver'>");
+				break;
+			case 'C':
+				buffer.append("<b color='black'>");
+				break;
+			}
+			buffer.append(card.set.toUpperCase());
+			buffer.append("</b><br>");
+		}
+		if (!card.name.equals(card.englishName)) {
+			buffer.append(card.englishName);
+			buffer.append("<br>");
+		}
+		if (card.price > 0) {
+				if(card.shopUrl.length() != 0){
+					buffer.append("<a href='");
+					buffer.append(card.shopUrl);
+					buffer.append("'>");
 				}
-				if (card.price > 0) {
-						if(card.shopUrl.length() != 0){
-							buffer.append("<a href='");
-							buffer.append(card.shopUrl);
-							buffer.append("'>");
-						}
-					buffer.append("$");
-					buffer.append(card.price);
-					String price = String.valueOf(card.price);
-					if (price.length() > 2 && price.charAt(price.length() - 2) == '.') buffer.append("0");
-					if(card.shopUrl.length() != 0){
-							buffer.append("</a>");
-						}
-					buffer.append("<br>");
+			buffer.append("$");
+			buffer.append(card.price);
+			String price = String.valueOf(card.price);
+			if (price.length() > 2 && price.charAt(price.length() - 2) == '.') buffer.append("0");
+			if(card.shopUrl.length() != 0){
+					buffer.append("</a>");
 				}
-				if (rulings.size() > 0) {
-					buffer.append("<br>");
-					for (String ruling : rulings) {
-						buffer.append(ruling);
-						buffer.append("<br><br>");
-					}
-				}
-				buffer.append("<br></body></html>");
-
-				SwingUtilities.invokeLater(new Runnable() {
-					public void run () {
-						if (!card.equals(currentCard)) return;
-						setText(buffer.toString());
-						setCaretPosition(0);
-					}
-				});
-
-				cardShown(card);
+			buffer.append("<br>");
+		}
+		if (rulings.size() > 0) {
+			buffer.append("<br>");
+			for (String ruling : rulings) {
+				buffer.append(ruling);
+				buffer.append("<br><br>");
 			}
-		});
+		}
+		buffer.append("<br></body></html>");
+		return buffer.toString();
 	}
 
 	public void setShowSingleSet (boolean showSingleSet) {
@@ -6,14 +6,20 @@ import java.awt.Image;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.StringTokenizer;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 import arcane.Arcane;
 import arcane.ui.util.UI;
 
 public class ManaSymbols {
 	static private final Map<String, Image> manaImages = new HashMap<String, Image>();
-	static private Pattern replaceSymbolsPattern = Pattern.compile("\\{([^}/]*)/?([^}]*)\\}");
+	static private final Map<String, String> smallSymbolToHTML = new ConcurrentHashMap<String, String>();
+	static private final Map<String, String> largeSymbolToHTML = new ConcurrentHashMap<String, String>();
+	static private final ThreadLocal<StringBuilder> threadBuffer = new ThreadLocal<StringBuilder>() {
+		protected StringBuilder initialValue () {
+			return new StringBuilder(512);
+		}
+	};
 
 	static public void loadImages () {
 		String[] symbols = new String[] {"0", "1", "10", "11", "12", "15", "16", "2", "2W", "2U", "2R", "2G", "2B", "3",
@@ -49,19 +55,54 @@ public class ManaSymbols {
 		return width;
 	}
 
-	static public synchronized String replaceSymbolsWithHTML (String value, boolean small) {
-		if (small){
-			value = value.replace("{C}", "<img src='file:images/symbols-11/C.png' width=13 height=11>");
-			value = value.replace("{P}", "<img src='file:images/symbols-11/P.png' width=5 height=11>");
-			value = value.replace("{Untap}", "{Q}");
-			return replaceSymbolsPattern.matcher(value).replaceAll("<img src='file:images/symbols-11/$1$2.png' width=11 height=11>");
+	/**
+	 * Replaces each {symbol} in the value with an HTML image tag. The value is scanned once and the tag for each symbol is built
+	 * only the first time the symbol is seen.
+	 */
+	static public String replaceSymbolsWithHTML (String value, boolean small) {
+		int start = value.indexOf('{');
+		if (start == -1) return value;
+		Map<String, String> symbolToHTML = small ? smallSymbolToHTML : largeSymbolToHTML;
+		StringBuilder buffer = threadBuffer.get();
+		buffer.setLength(0);
+		int last = 0;
+		while (start != -1) {
+			int end = value.indexOf('}', start + 1);
+			if (end == -1) break;
+			buffer.append(value, last, start);
+			String symbol = value.substring(start + 1, end);
+			String html = symbolToHTML.get(symbol);
+			if (html == null) {
+				html = getSymbolHTML(symbol, small);
+				if (symbolToHTML.size() < 512) symbolToHTML.put(symbol, html);
+			}
+			buffer.append(html);
+			last = end + 1;
+			start = value.indexOf('{', last);
+		}
+		buffer.append(value, last, value.length());
+		String result = buffer.toString();
+		if (buffer.capacity() > 16384) threadBuffer.remove();
+		return result;
+	}
+
+	static private String getSymbolHTML (String symbol, boolean small) {
+		if (small) {
+			if (symbol.equals("C")) return "<img src='file:images/symbols-11/C.png' width=13 height=11>";
+			if (symbol.equals("P")) return "<img src='file:images/symbols-11/P.png' width=5 height=11>";
+		} else {
+			if (symbol.equals("slash")) return "<img src='file:images/symbols-13/slash.png' width=10 height=13>";
+			if (symbol.equals("C")) return "<img src='file:images/symbols-13/C.png' width=16 height=13>";
+			if (symbol.equals("P")) return "<img src='file:images/symbols-11/P.png' width=6 height=13>";
 		}
+		if (symbol.equals("Untap"))
+			symbol = "Q";
 		else {
-			value = value.replace("{slash}", "<img src='file:images/symbols-13/slash.png' width=10 height=13>");
-			value = value.replace("{C}", "<img src='file:images/symbols-13/C.png' width=16 height=13>");
-			value = value.replace("{P}", "<img src='file:images/symbols-11/P.png' width=6 height=13>");
-			value = value.replace("{Untap}", "{Q}");
-			return replaceSymbolsPattern.matcher(value).replaceAll("<img src='file:images/symbols-13/$1$2.png' width=13 height=13>");
+			// Hybrid symbols such as {W/U} use the image without the slash.
+			int slash = symbol.indexOf('/');
+			if (slash != -1) symbol = symbol.substring(0, slash) + symbol.substring(slash + 1);
 		}
+		if (small) return "<img src='file:images/symbols-11/" + symbol + ".png' width=11 height=11>";
+		return "<img src='file:images/symbols-13/" + symbol + ".png' width=13 height=13>";
 	}
 }
@@ -8,6 +8,11 @@ import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+import arcane.util.PriorityExecutor.Droppable;
+import arcane.util.PriorityExecutor.Lane;
+import arcane.util.Util;
 
 public class ScaledImagePanel extends JPanel {
 	public volatile Image srcImage;
@@ -17,6 +22,8 @@ public class ScaledImagePanel extends JPanel {
 	private boolean scaleLarger;
 	private MultipassType multiPassType = MultipassType.bilinear;
 	private boolean blur;
+	private ScaledImage scaled;
+	private volatile ScaledImage pending;
 
 	public ScaledImagePanel () {
 		super(false);
@@ -31,6 +38,8 @@ public class ScaledImagePanel extends JPanel {
 	public void clearImage () {
 		srcImage = null;
 		srcImageBlurred = null;
+		scaled = null;
+		pending = null;
 		repaint();
 	}
 
@@ -54,7 +63,7 @@ public class ScaledImagePanel extends JPanel {
 		return srcImage != null;
 	}
 
-	private ScalingInfo getScalingInfo () {
+	private ScalingInfo getScalingInfo (Image srcImage) {
 		int panelWidth = getWidth();
 		int panelHeight = getHeight();
 		int srcWidth = srcImage.getWidth(null);
@@ -80,98 +89,181 @@ public class ScaledImagePanel extends JPanel {
 	}
 
 	public void paint (Graphics g) {
+		Image srcImage = this.srcImage;
 		if (srcImage == null) return;
 
-		Graphics2D g2 = (Graphics2D)g.create();
-		ScalingInfo info = getScalingInfo();
-
-		switch (scalingType) {
-		case nearestNeighbor:
-			scaleWithDrawImage(g2, info, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-			break;
-		case bilinear:
-			scaleWithDrawImage(g2, info, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-			break;
-		case bicubic:
-			scaleWithDrawImage(g2, info, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-			break;
-		case areaAveraging:
-			scaleWithGetScaledInstance(g2, info, Image.SCALE_AREA_AVERAGING);
-			break;
-		case replicate:
-			scaleWithGetScaledInstance(g2, info, Image.SCALE_REPLICATE);
-			break;
+		ScalingInfo info = getScalingInfo(srcImage);
+		Image sourceImage = getSourceImage(srcImage, info);
+		ScaledImage scaled = this.scaled;
+		if (scaled == null || !scaled.isFor(sourceImage, info, scalingType, multiPassType)) {
+			scaled = new ScaledImage(sourceImage, info, scalingType, multiPassType);
+			if (scaled.isSlow()) {
+				scaleLater(scaled);
+				// Draw a fast preview until the scaled image is ready.
+				Graphics2D g2 = (Graphics2D)g.create();
+				g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g2.drawImage(sourceImage, info.x, info.y, info.targetWidth, info.targetHeight, null);
+				g2.dispose();
+				return;
+			}
+			scaled.scale();
+			this.scaled = scaled;
 		}
+		g.drawImage(scaled.image, info.x, info.y, null);
 	}
 
-	private void scaleWithGetScaledInstance (Graphics2D g2, ScalingInfo info, int hints) {
-		Image srcImage = getSourceImage(info);
-		Image scaledImage = srcImage.getScaledInstance(info.targetWidth, info.targetHeight, hints);
-		g2.drawImage(scaledImage, info.x, info.y, null);
+	/**
+	 * Scales the image in the background and repaints when it is done, unless the panel needs a different image by then.
+	 */
+	private void scaleLater (final ScaledImage scaled) {
+		ScaledImage current = pending;
+		if (current != null && current.isFor(scaled.srcImage, scaled.info, scaled.scalingType, scaled.multiPassType)) return;
+		pending = scaled;
+		Util.threadPool.execute(Lane.render, new Droppable() {
+			public void run () {
+				if (pending != scaled) return;
+				scaled.scale();
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run () {
+						if (pending != scaled) return;
+						pending = null;
+						ScaledImagePanel.this.scaled = scaled;
+						repaint();
+					}
+				});
+			}
+
+			public void dropped () {
+				// Otherwise pending would keep the panel from queuing the scale again and the preview would be shown forever.
+				if (pending == scaled) Util.threadPool.execute(Lane.load, this);
+			}
+		});
 	}
 
-	private void scaleWithDrawImage (Graphics2D g2, ScalingInfo info, Object hint) {
-		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, hint);
+	private Image getSourceImage (Image srcImage, ScalingInfo info) {
+		Image srcImageBlurred = this.srcImageBlurred;
+		if (!blur || srcImageBlurred == null) return srcImage;
+		if (info.srcWidth / 2 < info.targetWidth || info.srcHeight / 2 < info.targetHeight) return srcImage;
+		return srcImageBlurred;
+	}
+
+	/**
+	 * An image scaled to the size and with the settings it was created with.
+	 */
+	static private class ScaledImage {
+		final Image srcImage;
+		final ScalingInfo info;
+		final ScalingType scalingType;
+		final MultipassType multiPassType;
+		BufferedImage image;
 
-		int tempDestWidth = info.srcWidth / 2, tempDestHeight = info.srcHeight / 2;
-		if (tempDestWidth < info.targetWidth) tempDestWidth = info.targetWidth;
-		if (tempDestHeight < info.targetHeight) tempDestHeight = info.targetHeight;
+		ScaledImage (Image srcImage, ScalingInfo info, ScalingType scalingType, MultipassType multiPassType) {
+			this.srcImage = srcImage;
+			this.info = info;
+			this.scalingType = scalingType;
+			this.multiPassType = multiPassType;
+		}
+
+		boolean isFor (Image srcImage, ScalingInfo info, ScalingType scalingType, MultipassType multiPassType) {
+			return this.srcImage == srcImage && this.info.targetWidth == info.targetWidth
+				&& this.info.targetHeight == info.targetHeight && this.scalingType == scalingType
+				&& this.multiPassType == multiPassType;
+		}
 
-		Image srcImage = getSourceImage(info);
+		/**
+		 * Returns true if scaling takes more than a single draw.
+		 */
+		boolean isSlow () {
+			switch (scalingType) {
+			case areaAveraging:
+			case replicate:
+				return true;
+			}
+			if (multiPassType == MultipassType.none) return false;
+			return info.srcWidth / 2 > info.targetWidth || info.srcHeight / 2 > info.targetHeight;
+		}
 
-		// If not doing multipass or multipass only needs a single pass, just scale it once directly to the panel surface.
-		if (multiPassType == MultipassType.none || (tempDestWidth == info.targetWidth && tempDestHeight == info.targetHeight)) {
-			g2.drawImage(srcImage, info.x, info.y, info.targetWidth, info.targetHeight, null);
-			return;
+		void scale () {
+			image = new BufferedImage(Math.max(1, info.targetWidth), Math.max(1, info.targetHeight), BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g2 = image.createGraphics();
+			switch (scalingType) {
+			case nearestNeighbor:
+				scaleWithDrawImage(g2, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+				break;
+			case bilinear:
+				scaleWithDrawImage(g2, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				break;
+			case bicubic:
+				scaleWithDrawImage(g2, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+				break;
+			case areaAveraging:
+				scaleWithGetScaledInstance(g2, Image.SCALE_AREA_AVERAGING);
+				break;
+			case replicate:
+				scaleWithGetScaledInstance(g2, Image.SCALE_REPLICATE);
+				break;
+			}
+			g2.dispose();
 		}
 
-		BufferedImage tempImage = new BufferedImage(tempDestWidth, tempDestHeight, BufferedImage.TYPE_INT_RGB);
-		Graphics2D g2temp = tempImage.createGraphics();
-		switch (multiPassType) {
-		case nearestNeighbor:
-			g2temp.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-			break;
-		case bilinear:
-			g2temp.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-			break;
-		case bicubic:
-			g2temp.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-			break;
+		private void scaleWithGetScaledInstance (Graphics2D g2, int hints) {
+			Image scaledImage = srcImage.getScaledInstance(info.targetWidth, info.targetHeight, hints);
+			g2.drawImage(scaledImage, 0, 0, null);
 		}
-		// Render first pass from image to temp.
-		g2temp.drawImage(srcImage, 0, 0, tempDestWidth, tempDestHeight, null);
-		// Render passes between the first and last pass.
-		int tempSrcWidth = tempDestWidth;
-		int tempSrcHeight = tempDestHeight;
-		while (true) {
-			if (tempDestWidth > info.targetWidth) {
-				tempDestWidth = tempDestWidth / 2;
-				if (tempDestWidth < info.targetWidth) tempDestWidth = info.targetWidth;
+
+		private void scaleWithDrawImage (Graphics2D g2, Object hint) {
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, hint);
+
+			int tempDestWidth = info.srcWidth / 2, tempDestHeight = info.srcHeight / 2;
+			if (tempDestWidth < info.targetWidth) tempDestWidth = info.targetWidth;
+			if (tempDestHeight < info.targetHeight) tempDestHeight = info.targetHeight;
+
+			// If not doing multipass or multipass only needs a single pass, just scale it once directly.
+			if (multiPassType == MultipassType.none || (tempDestWidth == info.targetWidth && tempDestHeight == info.targetHeight)) {
+				g2.drawImage(srcImage, 0, 0, info.targetWidth, info.targetHeight, null);
+				return;
 			}
 
-			if (tempDestHeight > info.targetHeight) {
-				tempDestHeight = tempDestHeight / 2;
-				if (tempDestHeight < info.targetHeight) tempDestHeight = info.targetHeight;
+			BufferedImage tempImage = new BufferedImage(tempDestWidth, tempDestHeight, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g2temp = tempImage.createGraphics();
+			switch (multiPassType) {
+			case nearestNeighbor:
+				g2temp.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+				break;
+			case bilinear:
+				g2temp.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				break;
+			case bicubic:
+				g2temp.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+				break;
 			}
+			// Render first pass from image to temp.
+			g2temp.drawImage(srcImage, 0, 0, tempDestWidth, tempDestHeight, null);
+			// Render passes between the first and last pass.
+			int tempSrcWidth = tempDestWidth;
+			int tempSrcHeight = tempDestHeight;
+			while (true) {
+				if (tempDestWidth > info.targetWidth) {
+					tempDestWidth = tempDestWidth / 2;
+					if (tempDestWidth < info.targetWidth) tempDestWidth = info.targetWidth;
+				}
 
-			if (tempDestWidth == info.targetWidth && tempDestHeight == info.targetHeight) break;
+				if (tempDestHeight > info.targetHeight) {
+					tempDestHeight = tempDestHeight / 2;
+					if (tempDestHeight < info.targetHeight) tempDestHeight = info.targetHeight;
+				}
 
-			g2temp.drawImage(tempImage, 0, 0, tempDestWidth, tempDestHeight, 0, 0, tempSrcWidth, tempSrcHeight, null);
+				if (tempDestWidth == info.targetWidth && tempDestHeight == info.targetHeight) break;
 
-			tempSrcWidth = tempDestWidth;
-			tempSrcHeight = tempDestHeight;
-		}
-		g2temp.dispose();
-		// Render last pass from temp to panel surface.
-		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, hint);
-		g2.drawImage(tempImage, info.x, info.y, info.x + info.targetWidth, info.y + info.targetHeight, 0, 0, tempSrcWidth,
-			tempSrcHeight, null);
-	}
+				g2temp.drawImage(tempImage, 0, 0, tempDestWidth, tempDestHeight, 0, 0, tempSrcWidth, tempSrcHeight, null);
 
-	private Image getSourceImage (ScalingInfo info) {
-		if (!blur || srcImageBlurred == null) return srcImage;
-		if (info.srcWidth / 2 < info.targetWidth || info.srcHeight / 2 < info.targetHeight) return srcImage;
-		return srcImageBlurred;
+				tempSrcWidth = tempDestWidth;
+				tempSrcHeight = tempDestHeight;
+			}
+			g2temp.dispose();
+			// Render last pass from temp to the scaled image.
+			g2.drawImage(tempImage, 0, 0, info.targetWidth, info.targetHeight, 0, 0, tempSrcWidth, tempSrcHeight, null);
+		}
 	}
 
 	static private class ScalingInfo {
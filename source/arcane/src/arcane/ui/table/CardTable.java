@@ -410,9 +410,7 @@ public class CardTable extends SortedTable {
 	}
 
 	public int getQty (Card card) {
-		Integer qty = model.cardToQty.get(card);
-		if (qty == null) return 0;
-		return qty;
+		return model.getQty(card);
 	}
 
 	public Map<String, String> getPreferences () {
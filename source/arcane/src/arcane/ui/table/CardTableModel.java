@@ -2,6 +2,7 @@
 package arcane.ui.table;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -10,15 +11,24 @@ import javax.swing.table.AbstractTableModel;
 import arcane.Arcane;
 import arcane.Card;
 import arcane.CardProperty;
+import arcane.util.IntIntMap;
+import arcane.util.IntList;
 
 public class CardTableModel extends AbstractTableModel {
 	public List<Card> viewCards = new ArrayList<Card>(512);
 	public List<Card> unsortedCards = new ArrayList<Card>(512);
 	public CardProperty[] properties = new CardProperty[0];
-	public Map<Card, Integer> cardToQty;
+	/** Card ID to the number of that card in the table. */
+	public IntIntMap cardToQty = new IntIntMap();
 	public boolean isUniqueOnly;
 
 	private boolean editable;
+	// Row lookups, built from viewCards when first needed after it changes.
+	private List<Card> idIndexCards, nameIndexCards;
+	private int idIndexSize, nameIndexSize;
+	private int modificationCount;
+	private IntIntMap idToRow = new IntIntMap();
+	private Map<String, IntList> nameToRows = new HashMap<String, IntList>();
 
 	public CardTableModel (boolean editable) {
 		this.editable = editable;
@@ -40,12 +50,16 @@ public class CardTableModel extends AbstractTableModel {
 		if (columnIndex < 0 || columnIndex > properties.length)
 			throw new IllegalArgumentException("Invalid column index: " + columnIndex);
 		Card card = viewCards.get(rowIndex);
-		if (properties[columnIndex] == CardProperty.qty) return cardToQty.get(card);
+		if (properties[columnIndex] == CardProperty.qty) return getQty(card);
 		if (properties[columnIndex] == CardProperty.ownedQty && isUniqueOnly)
 			return Arcane.getInstance().getTotalOwnedQty(card.name);
 		return card.getValue(properties[columnIndex]);
 	}
 
+	public int getQty (Card card) {
+		return cardToQty.get(card.id, 0);
+	}
+
 	public int getRowCount () {
 		return viewCards.size();
 	}
@@ -71,22 +85,67 @@ public class CardTableModel extends AbstractTableModel {
 	}
 
 	public int getRowIndex (Card card) {
-		for (int i = 0, n = viewCards.size(); i < n; i++)
-			if (viewCards.get(i).equals(card)) return i;
-		return -1;
+		if (idIndexCards != viewCards || idIndexSize != viewCards.size()) {
+			idToRow.clear();
+			for (int i = 0, n = viewCards.size(); i < n; i++)
+				idToRow.put(viewCards.get(i).id, i);
+			idIndexCards = viewCards;
+			idIndexSize = viewCards.size();
+		}
+		return idToRow.get(card.id, -1);
 	}
 
 	public List<Integer> getRowIndices (String cardName) {
-		List<Integer> indices = new ArrayList<Integer>();
-		for (int i = 0, n = viewCards.size(); i < n; i++)
-			if (viewCards.get(i).name.equals(cardName)) indices.add(i);
+		IntList rows = getNameRows(cardName);
+		List<Integer> indices = new ArrayList<Integer>(rows == null ? 0 : rows.size());
+		if (rows != null) {
+			for (int i = 0, n = rows.size(); i < n; i++)
+				indices.add(rows.get(i));
+		}
 		return indices;
 	}
 
 	public List<Card> getCards (String cardName) {
-		List<Card> cards = new ArrayList<Card>();
-		for (int index : getRowIndices(cardName))
-			cards.add(viewCards.get(index));
+		IntList rows = getNameRows(cardName);
+		List<Card> cards = new ArrayList<Card>(rows == null ? 0 : rows.size());
+		if (rows != null) {
+			for (int i = 0, n = rows.size(); i < n; i++)
+				cards.add(viewCards.get(rows.get(i)));
+		}
 		return cards;
 	}
+
+	private IntList getNameRows (String cardName) {
+		if (nameIndexCards != viewCards || nameIndexSize != viewCards.size()) {
+			nameToRows.clear();
+			for (int i = 0, n = viewCards.size(); i < n; i++) {
+				String name = viewCards.get(i).name;
+				IntList rows = nameToRows.get(name);
+				if (rows == null) {
+					rows = new IntList(4);
+					nameToRows.put(name, rows);
+				}
+				rows.add(i);
+			}
+			nameIndexCards = viewCards;
+			nameIndexSize = viewCards.size();
+		}
+		return nameToRows.get(cardName);
+	}
+
+	/**
+	 * Must be called after viewCards is modified in place, so row lookups are rebuilt. Replacing viewCards doesn't require this.
+	 */
+	public void rowsChanged () {
+		idIndexCards = null;
+		nameIndexCards = null;
+		modificationCount++;
+	}
+
+	/**
+	 * Returns a count that changes each time viewCards is modified in place.
+	 */
+	public int getModificationCount () {
+		return modificationCount;
+	}
 }
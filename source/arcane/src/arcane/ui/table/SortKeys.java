@@ -0,0 +1,333 @@
+
+package arcane.ui.table;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import arcane.Card;
+import arcane.CardProperty;
+import arcane.ui.table.SortedTable.CastingCostComparator;
+import arcane.ui.table.SortedTable.CollectorNumberComparator;
+import arcane.ui.table.SortedTable.Direction;
+import arcane.ui.table.SortedTable.FlagComparator;
+import arcane.ui.table.SortedTable.ManaProducedComparator;
+import arcane.ui.table.SortedTable.OwnedQtyComparator;
+import arcane.ui.table.SortedTable.PowerComparator;
+import arcane.ui.table.SortedTable.RarityComparator;
+import arcane.ui.table.SortedTable.SortedColumn;
+import arcane.ui.table.SortedTable.ToughnessComparator;
+import arcane.util.IntIntMap;
+
+/**
+ * Holds the values of the sorted columns for each card, extracted once so that comparisons use primitives and prepared strings
+ * instead of reading and converting card properties every time. The keys reflect the cards at the time they were added.
+ */
+class SortKeys {
+	private final Key[] keys;
+	private final IntIntMap idToRow;
+	private Card[] cards;
+	private int size, capacity;
+
+	/**
+	 * @param cardToQty The quantities used for the qty column.
+	 */
+	public SortKeys (CardTableModel model, IntIntMap cardToQty, List<SortedColumn> sortedColumns, int capacity) {
+		List<Key> keys = new ArrayList<Key>();
+		for (SortedColumn sortedColumn : sortedColumns)
+			addKeys(keys, model, cardToQty, model.properties[sortedColumn.index], sortedColumn.direction == Direction.descending);
+		this.keys = keys.toArray(new Key[keys.size()]);
+		this.capacity = Math.max(16, capacity);
+		for (Key key : this.keys)
+			key.resize(this.capacity);
+		cards = new Card[this.capacity];
+		idToRow = new IntIntMap(this.capacity);
+	}
+
+	/**
+	 * Returns the key row for the card, extracting its keys if the card has not been added yet.
+	 */
+	public int add (Card card) {
+		int row = idToRow.get(card.id, -1);
+		if (row != -1) return row;
+		if (size == capacity) {
+			capacity *= 2;
+			for (Key key : keys)
+				key.resize(capacity);
+			Card[] newCards = new Card[capacity];
+			System.arraycopy(cards, 0, newCards, 0, size);
+			cards = newCards;
+		}
+		row = size++;
+		cards[row] = card;
+		for (Key key : keys)
+			key.set(row, card);
+		idToRow.put(card.id, row);
+		return row;
+	}
+
+	public boolean isEmpty () {
+		return keys.length == 0;
+	}
+
+	public int compare (Card card1, Card card2) {
+		return compare(add(card1), add(card2));
+	}
+
+	public int compare (int row1, int row2) {
+		for (Key key : keys) {
+			int comparison = key.compare(row1, row2);
+			if (comparison != 0) return key.descending ? -comparison : comparison;
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the cards in sorted order. Cards that compare equal keep their order.
+	 */
+	public List<Card> sort (List<Card> cards) {
+		int n = cards.size();
+		int[] rows = new int[n];
+		for (int i = 0; i < n; i++)
+			rows[i] = add(cards.get(i));
+		if (!isEmpty()) mergeSort(rows.clone(), rows, 0, n);
+		List<Card> sorted = new ArrayList<Card>(n);
+		for (int i = 0; i < n; i++)
+			sorted.add(this.cards[rows[i]]);
+		return sorted;
+	}
+
+	private void mergeSort (int[] source, int[] dest, int low, int high) {
+		int length = high - low;
+		if (length < 7) {
+			for (int i = low; i < high; i++)
+				for (int j = i; j > low && compare(dest[j - 1], dest[j]) > 0; j--) {
+					int temp = dest[j];
+					dest[j] = dest[j - 1];
+					dest[j - 1] = temp;
+				}
+			return;
+		}
+		int mid = (low + high) >>> 1;
+		mergeSort(dest, source, low, mid);
+		mergeSort(dest, source, mid, high);
+		if (compare(source[mid - 1], source[mid]) <= 0) {
+			System.arraycopy(source, low, dest, low, length);
+			return;
+		}
+		for (int i = low, p = low, q = mid; i < high; i++) {
+			if (q >= high || p < mid && compare(source[p], source[q]) <= 0)
+				dest[i] = source[p++];
+			else
+				dest[i] = source[q++];
+		}
+	}
+
+	static private void addKeys (List<Key> keys, CardTableModel model, final IntIntMap cardToQty, final CardProperty property,
+		boolean descending) {
+		switch (property) {
+		case castingCost:
+			keys.add(new LongKey(descending) {
+				long getValue (Card card) {
+					return card.convertedCastingCost;
+				}
+			});
+			// Sort no casting cost cards (eg, lands) below zero casting cost cards.
+			keys.add(new LongKey(descending) {
+				long getValue (Card card) {
+					return card.convertedCastingCost != 0 || card.castingCost.length() > 0 ? 1 : 0;
+				}
+			});
+			keys.add(new LongKey(descending) {
+				long getValue (Card card) {
+					return CastingCostComparator.getColorValue(card);
+				}
+			});
+			return;
+		case qty:
+			keys.add(new LongKey(descending) {
+				long getValue (Card card) {
+					return cardToQty.get(card.id, 0);
+				}
+			});
+			return;
+		case price:
+		case convertedCost:
+		case rating:
+			keys.add(new LongKey(descending) {
+				long getValue (Card card) {
+					return getFloatValue(((Number)card.getValue(property)).floatValue());
+				}
+			});
+			return;
+		case ownedQty:
+			final boolean uniqueOnly = model.isUniqueOnly;
+			keys.add(new LongKey(descending) {
+				long getValue (Card card) {
+					return OwnedQtyComparator.getValue(card, uniqueOnly);
+				}
+			});
+			return;
+		case power:
+		case pt:
+			keys.add(new LongKey(descending) {
+				long getValue (Card card) {
+					return PowerComparator.getValue(card);
+				}
+			});
+			// Fall through.
+		case touhgness:
+			keys.add(new LongKey(descending) {
+				long getValue (Card card) {
+					return ToughnessComparator.getValue(card);
+				}
+			});
+			return;
+		case color:
+		case creatureType:
+		case set:
+		case setName:
+		case legal:
+		case name:
+		case type:
+		case version:
+			keys.add(new StringKey(property, descending));
+			return;
+		case collectorNumber:
+			keys.add(new StringKey(CardProperty.set, descending));
+			// Cards without a collector number sort after those with one, and by name among themselves.
+			keys.add(new LongKey(descending) {
+				long getValue (Card card) {
+					if (card.collectorNumber == null || card.collectorNumber.length() == 0) return Long.MAX_VALUE;
+					return CollectorNumberComparator.getValue(card);
+				}
+			});
+			keys.add(new StringKey(CardProperty.name, descending) {
+				String getValue (Card card) {
+					if (card.collectorNumber != null && card.collectorNumber.length() > 0) return "";
+					return super.getValue(card);
+				}
+			});
+			return;
+		case flags:
+			keys.add(new LongKey(descending) {
+				long getValue (Card card) {
+					return FlagComparator.getValue(card);
+				}
+			});
+			return;
+		case manaProduced:
+			keys.add(new LongKey(descending) {
+				long getValue (Card card) {
+					return card.manaProduced.length();
+				}
+			});
+			keys.add(new LongKey(descending) {
+				long getValue (Card card) {
+					return ManaProducedComparator.getColorValue(card);
+				}
+			});
+			return;
+		case rarity:
+			keys.add(new LongKey(descending) {
+				long getValue (Card card) {
+					return RarityComparator.getValue(card);
+				}
+			});
+			return;
+		}
+		throw new RuntimeException("Invalid property: " + property);
+	}
+
+	/**
+	 * Returns a value that orders the same as the float.
+	 */
+	static long getFloatValue (float value) {
+		if (value == 0) return 0; // Treat -0 as 0.
+		int bits = Float.floatToIntBits(value);
+		return bits < 0 ? -(long)(bits & 0x7fffffff) : bits;
+	}
+
+	/**
+	 * Returns the string with each character folded so that comparing with compareTo gives the same order as
+	 * String.CASE_INSENSITIVE_ORDER.
+	 */
+	static String fold (String value) {
+		if (value == null) return "";
+		char[] chars = null;
+		for (int i = 0, n = value.length(); i < n; i++) {
+			char c = value.charAt(i);
+			char folded = Character.toLowerCase(Character.toUpperCase(c));
+			if (folded == c) continue;
+			if (chars == null) chars = value.toCharArray();
+			chars[i] = folded;
+		}
+		return chars == null ? value : new String(chars);
+	}
+
+	static abstract private class Key {
+		final boolean descending;
+
+		Key (boolean descending) {
+			this.descending = descending;
+		}
+
+		abstract void resize (int capacity);
+
+		abstract void set (int row, Card card);
+
+		abstract int compare (int row1, int row2);
+	}
+
+	static abstract private class LongKey extends Key {
+		private long[] values = new long[0];
+
+		LongKey (boolean descending) {
+			super(descending);
+		}
+
+		abstract long getValue (Card card);
+
+		void resize (int capacity) {
+			long[] newValues = new long[capacity];
+			System.arraycopy(values, 0, newValues, 0, values.length);
+			values = newValues;
+		}
+
+		void set (int row, Card card) {
+			values[row] = getValue(card);
+		}
+
+		int compare (int row1, int row2) {
+			long value1 = values[row1], value2 = values[row2];
+			return value1 < value2 ? -1 : (value1 > value2 ? 1 : 0);
+		}
+	}
+
+	static private class StringKey extends Key {
+		private final CardProperty property;
+		private String[] values = new String[0];
+
+		StringKey (CardProperty property, boolean descending) {
+			super(descending);
+			this.property = property;
+		}
+
+		String getValue (Card card) {
+			return fold((String)card.getValue(property));
+		}
+
+		void resize (int capacity) {
+			String[] newValues = new String[capacity];
+			System.arraycopy(values, 0, newValues, 0, values.length);
+			values = newValues;
+		}
+
+		void set (int row, Card card) {
+			values[row] = getValue(card);
+		}
+
+		int compare (int row1, int row2) {
+			return values[row1].compareTo(values[row2]);
+		}
+	}
+}
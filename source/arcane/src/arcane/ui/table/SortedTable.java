@@ -8,17 +8,20 @@ import java.awt.Rectangle;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.Icon;
 import javax.swing.JLabel;
 import javax.swing.JTable;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.event.TableModelEvent;
@@ -33,32 +36,51 @@ import javax.swing.table.TableModel;
 import arcane.Arcane;
 import arcane.Card;
 import arcane.CardProperty;
+import arcane.util.IntIntMap;
+import arcane.util.IntList;
+import arcane.util.PriorityExecutor.Lane;
+import arcane.util.Util;
 
 public abstract class SortedTable extends JTable {
 	static protected enum Direction {
 		descending, ascending, unsorted
 	}
 
-	static public StringComparator stringComparator = new StringComparator();
-	static public NumberComparator numberComparator = new NumberComparator();
-	static public CastingCostComparator castingCostComparator = new CastingCostComparator();
-	static public PowerComparator powerComparator = new PowerComparator();
-	static public ToughnessComparator toughnessComparator = new ToughnessComparator();
-	static public ManaProducedComparator manaProducedComparator = new ManaProducedComparator();
-	static public FlagComparator flagComparator = new FlagComparator();
-	static public RarityComparator rarityComparator = new RarityComparator();
-	static public CollectorNumberComparator collectorNumberComparator = new CollectorNumberComparator();
-	static public OwnedQtyComparator ownedQtyComparator = new OwnedQtyComparator();
+	static public final CastingCostComparator castingCostComparator = new CastingCostComparator();
+	static public final PowerComparator powerComparator = new PowerComparator();
+	static public final ToughnessComparator toughnessComparator = new ToughnessComparator();
+	static public final ManaProducedComparator manaProducedComparator = new ManaProducedComparator();
+	static public final FlagComparator flagComparator = new FlagComparator();
+	static public final RarityComparator rarityComparator = new RarityComparator();
+	static public final CollectorNumberComparator collectorNumberComparator = new CollectorNumberComparator();
+
+	// Comparators are immutable, so one instance for each property and option is shared by all tables and threads.
+	static private final Map<CardProperty, Comparator<Card>> comparators = new EnumMap<CardProperty, Comparator<Card>>(CardProperty.class);
+	static private final OwnedQtyComparator uniqueOwnedQtyComparator = new OwnedQtyComparator(true);
+	static {
+		for (CardProperty property : CardProperty.values())
+			comparators.put(property, newComparator(property));
+	}
 
 	static private final SortedColumn unsortedColumn = new SortedColumn(-1, Direction.unsorted);
+	static private final int maxRowEvents = 64;
+	static private final int backgroundSortSize = 2000;
 
 	public boolean allowUnsorted = true;
 	public List<SortedColumn> sortedColumns = new ArrayList<SortedColumn>();
 	public CardTableModel model;
 
-	protected Comparator<Card> comparator = new RowComparator();
+	protected Comparator<Card> comparator = new Comparator<Card>() {
+		public int compare (Card card1, Card card2) {
+			return getSortKeys().compare(card1, card2);
+		}
+	};
 
 	private boolean sortingDisabled;
+	private SortKeys sortKeys;
+	private volatile int sortRequest;
+	private boolean sortPending;
+	private List<Runnable> runWhenSorted = new ArrayList<Runnable>();
 	private List<Card> selectedCards;
 
 	public void setSelectedCard (Card card) {
@@ -76,20 +98,26 @@ public abstract class SortedTable extends JTable {
 	}
 
 	public boolean setSelectedCards (Collection<Card> cards) {
-		if (cards.size() > 100) return false; // Don't hang just to select cards.
-		int lowestIndex = Integer.MAX_VALUE;
-		int highestIndex = -1;
-		List<Integer> indices = new ArrayList<Integer>();
+		IntList rows = new IntList(cards.size());
 		for (Card card : cards) {
 			int rowIndex = model.getRowIndex(card);
-			if (rowIndex != -1) indices.add(rowIndex);
-			lowestIndex = Math.min(lowestIndex, rowIndex);
-			highestIndex = Math.max(highestIndex, rowIndex);
+			if (rowIndex != -1) rows.add(rowIndex);
 		}
-		if (indices.size() == 0) return false;
+		if (rows.size() == 0) return false;
+		int[] indices = rows.toArray();
+		Arrays.sort(indices);
+		int lowestIndex = indices[0];
+		int highestIndex = indices[indices.length - 1];
+		// Select runs of adjacent rows as one interval and fire a single event.
+		selectionModel.setValueIsAdjusting(true);
 		selectionModel.clearSelection();
-		for (int rowIndex : indices)
-			selectionModel.addSelectionInterval(rowIndex, rowIndex);
+		for (int i = 0, n = indices.length; i < n; i++) {
+			int start = indices[i];
+			while (i + 1 < n && indices[i + 1] <= indices[i] + 1)
+				i++;
+			selectionModel.addSelectionInterval(start, indices[i]);
+		}
+		selectionModel.setValueIsAdjusting(false);
 		Rectangle lowRect = getCellRect(lowestIndex, 0, true);
 		Rectangle highRect = getCellRect(highestIndex, 0, true);
 		scrollRectToVisible(lowRect);
@@ -112,6 +140,20 @@ public abstract class SortedTable extends JTable {
 		return cards;
 	}
 
+	/**
+	 * Returns the cards up to the specified number of rows above and below the selected row.
+	 */
+	public List<Card> getAdjacentCards (int rows) {
+		List<Card> cards = new ArrayList<Card>(rows * 2);
+		int rowIndex = getSelectedRow();
+		if (rowIndex == -1) return cards;
+		for (int i = 1; i <= rows; i++) {
+			if (rowIndex + i < model.viewCards.size()) cards.add(model.viewCards.get(rowIndex + i));
+			if (rowIndex - i >= 0 && rowIndex - i < model.viewCards.size()) cards.add(model.viewCards.get(rowIndex - i));
+		}
+		return cards;
+	}
+
 	public void setModel (TableModel model) {
 		super.setModel(model);
 		model.addTableModelListener(new TableModelListener() {
@@ -173,27 +215,200 @@ public abstract class SortedTable extends JTable {
 		sort();
 	}
 
+	/**
+	 * Collapses the unsorted cards into rows and sorts them. Large tables are sorted on another thread when called on the event
+	 * dispatch thread, and the rows are swapped in when done. Until then the previous rows are shown and only the latest request is
+	 * completed.
+	 * @see #runWhenSorted(Runnable)
+	 */
 	public void sort () {
 		// A sorted column could have been removed.
 		for (Iterator<SortedColumn> iter = sortedColumns.iterator(); iter.hasNext();)
 			if (iter.next().index >= model.properties.length) iter.remove();
 
-		// Collapse same cards into single rows and collect quantities.
-		List<Card> viewCards = new ArrayList<Card>();
-		model.cardToQty = new HashMap<Card, Integer>();
-		for (Card card : model.unsortedCards) {
-			Integer qty = model.cardToQty.get(card);
-			if (qty == null) {
-				viewCards.add(card);
-				qty = 0;
-			}
-			qty++;
-			model.cardToQty.put(card, qty);
+		final int request = ++sortRequest;
+		final int size = model.unsortedCards.size();
+		// Keys are extracted once per sort and kept for rows added by updateRows until the next sort.
+		final IntIntMap cardToQty = new IntIntMap(size);
+		final SortKeys keys = new SortKeys(model, cardToQty, sortedColumns, size);
+		if (size < backgroundSortSize || !SwingUtilities.isEventDispatchThread()) {
+			setRows(keys.sort(collapse(model.unsortedCards, cardToQty)), cardToQty, keys);
+			return;
 		}
 
+		sortPending = true;
+		final List<Card> unsortedCards = new ArrayList<Card>(model.unsortedCards);
+		Util.threadPool.execute(Lane.search, new Runnable() {
+			public void run () {
+				if (request != sortRequest) return;
+				final List<Card> viewCards = keys.sort(collapse(unsortedCards, cardToQty));
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run () {
+						if (request != sortRequest) return;
+						setRows(viewCards, cardToQty, keys);
+					}
+				});
+			}
+		});
+	}
+
+	private void setRows (List<Card> viewCards, IntIntMap cardToQty, SortKeys keys) {
 		model.viewCards = viewCards;
-		Collections.sort(model.viewCards, comparator);
+		model.cardToQty = cardToQty;
+		sortKeys = keys;
+		sortPending = false;
 		sorted();
+		List<Runnable> runnables = new ArrayList<Runnable>(runWhenSorted);
+		runWhenSorted.clear();
+		for (Runnable runnable : runnables)
+			runnable.run();
+	}
+
+	/**
+	 * Collapses same cards into single rows and collects their quantities.
+	 */
+	static private List<Card> collapse (List<Card> cards, IntIntMap cardToQty) {
+		List<Card> viewCards = new ArrayList<Card>();
+		for (Card card : cards)
+			if (cardToQty.increment(card.id, 1) == 1) viewCards.add(card);
+		return viewCards;
+	}
+
+	/**
+	 * Returns true if the table is being sorted on another thread and the rows shown are not yet up to date.
+	 */
+	public boolean isSortPending () {
+		return sortPending;
+	}
+
+	/**
+	 * Runs the runnable on the event dispatch thread once the rows are up to date, which is immediately if a sort is not pending.
+	 */
+	public void runWhenSorted (Runnable runnable) {
+		if (sortPending)
+			runWhenSorted.add(runnable);
+		else
+			runnable.run();
+	}
+
+	private SortKeys getSortKeys () {
+		if (sortKeys == null) sortKeys = new SortKeys(model, model.cardToQty, sortedColumns, model.viewCards.size());
+		return sortKeys;
+	}
+
+	/**
+	 * Removes and adds rows in place, keeping the rows sorted and firing events only for the rows that changed. This avoids
+	 * sorting the whole table and keeps the selection and scroll position. Each card must occur only once in the table, and
+	 * model.unsortedCards must already contain the new cards.
+	 */
+	public void updateRows (Collection<Card> removedCards, Collection<Card> addedCards) {
+		if (sortPending) {
+			// The rows shown are out of date, so the changes can't be applied to them.
+			sort();
+			return;
+		}
+		AbstractTableModel tableModel = (AbstractTableModel)getModel();
+		IntIntMap cardToQty = model.cardToQty;
+		List<Card> oldSelectedCards = getSelectedCards();
+		boolean fireRowEvents = true;
+
+		IntIntMap removedIDs = new IntIntMap(removedCards.size());
+		for (Card card : removedCards)
+			if (cardToQty.remove(card.id, 0) != 0) removedIDs.put(card.id, 1);
+		if (removedIDs.size() > 0) {
+			// Find runs of removed rows from the bottom up, so deleting a run doesn't change the indices of the others.
+			List<Card> viewCards = model.viewCards;
+			IntList runs = new IntList();
+			for (int i = viewCards.size() - 1; i >= 0; i--) {
+				if (!removedIDs.containsKey(viewCards.get(i).id)) continue;
+				int last = i;
+				while (i > 0 && removedIDs.containsKey(viewCards.get(i - 1).id))
+					i--;
+				runs.add(i);
+				runs.add(last);
+			}
+			if (runs.size() / 2 > maxRowEvents) {
+				fireRowEvents = false;
+				List<Card> newViewCards = new ArrayList<Card>(viewCards.size());
+				for (Card card : viewCards)
+					if (!removedIDs.containsKey(card.id)) newViewCards.add(card);
+				model.viewCards = newViewCards;
+			} else {
+				for (int i = 0, n = runs.size(); i < n; i += 2) {
+					viewCards.subList(runs.get(i), runs.get(i + 1) + 1).clear();
+					model.rowsChanged();
+					tableModel.fireTableRowsDeleted(runs.get(i), runs.get(i + 1));
+				}
+			}
+		}
+
+		List<Card> sortedAddedCards = new ArrayList<Card>(addedCards.size());
+		for (Card card : addedCards)
+			if (cardToQty.increment(card.id, 1) == 1) sortedAddedCards.add(card);
+		if (sortedAddedCards.size() > 0) {
+			// A full sort is stable, so rows that compare equal are in the order they first occur in the unsorted cards. Breaking ties
+			// the same way makes each row's position unique and the result match a full sort.
+			final IntIntMap cardToOrder = new IntIntMap(model.unsortedCards.size());
+			int order = 0;
+			for (Card card : model.unsortedCards)
+				if (!cardToOrder.containsKey(card.id)) cardToOrder.put(card.id, order++);
+			Comparator<Card> comparator = new Comparator<Card>() {
+				public int compare (Card card1, Card card2) {
+					int comparison = SortedTable.this.comparator.compare(card1, card2);
+					if (comparison != 0) return comparison;
+					return cardToOrder.get(card1.id, 0) - cardToOrder.get(card2.id, 0);
+				}
+			};
+			Collections.sort(sortedAddedCards, comparator);
+			// Find runs of added cards that go between the same two rows.
+			List<Card> viewCards = model.viewCards;
+			IntList runs = new IntList();
+			for (int i = 0, n = sortedAddedCards.size(); i < n;) {
+				int index = Collections.binarySearch(viewCards, sortedAddedCards.get(i), comparator);
+				if (index < 0) index = -index - 1;
+				int end = i + 1;
+				if (index < viewCards.size()) {
+					Card next = viewCards.get(index);
+					while (end < n && comparator.compare(sortedAddedCards.get(end), next) < 0)
+						end++;
+				} else
+					end = n;
+				runs.add(index);
+				runs.add(i);
+				runs.add(end);
+				i = end;
+			}
+			if (!fireRowEvents || runs.size() / 3 > maxRowEvents) {
+				fireRowEvents = false;
+				List<Card> newViewCards = new ArrayList<Card>(viewCards.size() + sortedAddedCards.size());
+				int previous = 0;
+				for (int i = 0, n = runs.size(); i < n; i += 3) {
+					newViewCards.addAll(viewCards.subList(previous, runs.get(i)));
+					newViewCards.addAll(sortedAddedCards.subList(runs.get(i + 1), runs.get(i + 2)));
+					previous = runs.get(i);
+				}
+				newViewCards.addAll(viewCards.subList(previous, viewCards.size()));
+				model.viewCards = newViewCards;
+			} else {
+				int inserted = 0;
+				for (int i = 0, n = runs.size(); i < n; i += 3) {
+					int index = runs.get(i) + inserted;
+					int count = runs.get(i + 2) - runs.get(i + 1);
+					viewCards.addAll(index, sortedAddedCards.subList(runs.get(i + 1), runs.get(i + 2)));
+					model.rowsChanged();
+					tableModel.fireTableRowsInserted(index, index + count - 1);
+					inserted += count;
+				}
+			}
+		}
+
+		if (!fireRowEvents) {
+			// Too many separate changes to fire an event for each.
+			sortingDisabled = true;
+			tableModel.fireTableDataChanged();
+			sortingDisabled = false;
+			if (!oldSelectedCards.isEmpty()) setSelectedCards(oldSelectedCards);
+		}
 	}
 
 	public void sorted () {
@@ -208,7 +423,19 @@ public abstract class SortedTable extends JTable {
 	}
 
 	public Comparator<Card> getComparator (int columnIndex) {
-		final CardProperty property = model.properties[columnIndex];
+		return getComparator(model.properties[columnIndex], model.isUniqueOnly);
+	}
+
+	/**
+	 * Returns the shared comparator for the property.
+	 * @param uniqueOnly If true, owned quantities are compared for all printings of a card.
+	 */
+	static public Comparator<Card> getComparator (CardProperty property, boolean uniqueOnly) {
+		if (property == CardProperty.ownedQty && uniqueOnly) return uniqueOwnedQtyComparator;
+		return comparators.get(property);
+	}
+
+	static private Comparator<Card> newComparator (CardProperty property) {
 		switch (property) {
 		case castingCost:
 			return castingCostComparator;
@@ -216,11 +443,9 @@ public abstract class SortedTable extends JTable {
 		case qty:
 		case convertedCost:
 		case rating:
-			numberComparator.property = property;
-			return numberComparator;
+			return new NumberComparator(property);
 		case ownedQty:
-		    	ownedQtyComparator.uniqueOnly = model.isUniqueOnly;
-			return ownedQtyComparator;
+			return new OwnedQtyComparator(false);
 		case power:
 		case pt:
 			return powerComparator;
@@ -234,8 +459,7 @@ public abstract class SortedTable extends JTable {
 		case name:
 		case type:
 		case version:
-			stringComparator.property = property;
-			return stringComparator;
+			return new StringComparator(property);
 		case collectorNumber:
 			return collectorNumberComparator;
 		case flags:
@@ -340,27 +564,12 @@ public abstract class SortedTable extends JTable {
 		}
 	}
 
-	private class RowComparator implements Comparator<Card> {
-		public int compare (Card o1, Card o2) {
-			for (SortedColumn sortedColumn : sortedColumns) {
-				// Define null is less than everything, except null.
-				int comparison;
-				if (o1 == null && o2 == null)
-					comparison = 0;
-				else if (o1 == null)
-					comparison = -1;
-				else if (o2 == null)
-					comparison = 1;
-				else
-					comparison = getComparator(sortedColumn.index).compare(o1, o2);
-				if (comparison != 0) return sortedColumn.direction == Direction.descending ? -comparison : comparison;
-			}
-			return 0;
-		}
-	}
-
 	static public class StringComparator implements Comparator<Card> {
-		public CardProperty property;
+		public final CardProperty property;
+
+		public StringComparator (CardProperty property) {
+			this.property = property;
+		}
 
 		public int compare (Card card1, Card card2) {
 			String value1 = (String)card1.getValue(property);
@@ -373,94 +582,61 @@ public abstract class SortedTable extends JTable {
 
 	static public class FlagComparator implements Comparator<Card> {
 		public int compare (Card card1, Card card2) {
-			int value1 = 0;
-			String flags1 = card1.flags;
-			for (int i = 0, n = flags1.length(); i < n; i++) {
-				switch (flags1.charAt(i)) {
-				case 'b':
-					value1 += 10000;
-					break;
-				case 'g':
-					value1 += 1000;
-					break;
-				case 'y':
-					value1 += 100;
-					break;
-				case 'o':
-					value1 += 10;
-					break;
-				case 'r':
-					value1 += 1;
-					break;
-				}
-			}
+			return getValue(card1) - getValue(card2);
+		}
 
-			int value2 = 0;
-			String flags2 = card2.flags;
-			for (int i = 0, n = flags2.length(); i < n; i++) {
-				switch (flags2.charAt(i)) {
+		static public int getValue (Card card) {
+			int value = 0;
+			String flags = card.flags;
+			for (int i = 0, n = flags.length(); i < n; i++) {
+				switch (flags.charAt(i)) {
 				case 'b':
-					value2 += 10000;
+					value += 10000;
 					break;
 				case 'g':
-					value2 += 1000;
+					value += 1000;
 					break;
 				case 'y':
-					value2 += 100;
+					value += 100;
 					break;
 				case 'o':
-					value2 += 10;
+					value += 10;
 					break;
 				case 'r':
-					value2 += 1;
+					value += 1;
 					break;
 				}
 			}
-
-			return value1 - value2;
+			return value;
 		}
 	};
 
 	static public class RarityComparator implements Comparator<Card> {
 		public int compare (Card card1, Card card2) {
-			int value1 = 0;
-			switch (card1.rarity.charAt(0)) {
-			case 'M':
-				value1 = 4;
-				break;
-			case 'R':
-				value1 = 3;
-				break;
-			case 'U':
-				value1 = 2;
-				break;
-			case 'C':
-				value1 = 1;
-				break;
-			}
+			return getValue(card1) - getValue(card2);
+		}
 
-			int value2 = 0;
-			switch (card2.rarity.charAt(0)) {
+		static public int getValue (Card card) {
+			switch (card.rarity.charAt(0)) {
 			case 'M':
-				value2 = 4;
-				break;
+				return 4;
 			case 'R':
-				value2 = 3;
-				break;
+				return 3;
 			case 'U':
-				value2 = 2;
-				break;
+				return 2;
 			case 'C':
-				value2 = 1;
-				break;
+				return 1;
 			}
-
-			return value1 - value2;
+			return 0;
 		}
 	};
 
 	static public class NumberComparator implements Comparator<Card> {
-		public CardProperty property;
+		public final CardProperty property;
+
+		public NumberComparator (CardProperty property) {
+			this.property = property;
+		}
 
 		public int compare (Card card1, Card card2) {
 			float value1 = ((Number)card1.getValue(property)).floatValue();
@@ -474,93 +650,89 @@ public abstract class SortedTable extends JTable {
 
 	static public class PowerComparator implements Comparator<Card> {
 		public int compare (Card card1, Card card2) {
-			int value1 = card1.power;
-			if (value1 == 0) {
-				if (card1.pt.length() == 0)
-					value1 = -2;
-				else if (card1.pt.charAt(0) != '0') {
-					value1 = -1;
-				}
-			}
-			int value2 = card2.power;
-			if (value2 == 0) {
-				if (card2.pt.length() == 0)
-					value2 = -2;
-				else if (card2.pt.charAt(0) != '0') {
-					value2 = -1;
-				}
-			}
-			int comparison = value1 - value2;
+			int comparison = getValue(card1) - getValue(card2);
 			if (comparison != 0) return comparison;
 			return toughnessComparator.compare(card1, card2);
 		}
+
+		static public int getValue (Card card) {
+			int value = card.power;
+			if (value == 0) {
+				if (card.pt.length() == 0)
+					value = -2;
+				else if (card.pt.charAt(0) != '0') {
+					value = -1;
+				}
+			}
+			return value;
+		}
 	};
 
 	static public class ToughnessComparator implements Comparator<Card> {
 		public int compare (Card card1, Card card2) {
-			int value1 = card1.toughness;
-			if (value1 == 0) {
-				if (card1.pt.length() == 0)
-					value1 = -2;
-				else if (card1.pt.charAt(card1.pt.length() - 1) != '0') {
-					value1 = -1;
-				}
-			}
-			int value2 = card2.toughness;
-			if (value2 == 0) {
-				if (card2.pt.length() == 0)
-					value2 = -2;
-				else if (card2.pt.charAt(card2.pt.length() - 1) != '0') {
-					value2 = -1;
+			return getValue(card1) - getValue(card2);
+		}
+
+		static public int getValue (Card card) {
+			int value = card.toughness;
+			if (value == 0) {
+				if (card.pt.length() == 0)
+					value = -2;
+				else if (card.pt.charAt(card.pt.length() - 1) != '0') {
+					value = -1;
 				}
 			}
-			return value1 - value2;
+			return value;
 		}
 	};
 
 	static public class CollectorNumberComparator implements Comparator<Card> {
+		static private final StringComparator setComparator = new StringComparator(CardProperty.set);
+		static private final StringComparator nameComparator = new StringComparator(CardProperty.name);
+
 		public int compare (Card card1, Card card2) {
-			stringComparator.property = CardProperty.set;
-			int difference = stringComparator.compare(card1, card2);
+			int difference = setComparator.compare(card1, card2);
 			if (difference != 0) return difference;
 			if ((card1.collectorNumber == null || card1.collectorNumber.length() == 0)
 				&& (card2.collectorNumber == null || card2.collectorNumber.length() == 0)) {
-				stringComparator.property = CardProperty.name;
-				return stringComparator.compare(card1, card2);
+				return nameComparator.compare(card1, card2);
 			}
 			if (card1.collectorNumber == null || card1.collectorNumber.length() == 0) return 1;
 			if (card2.collectorNumber == null || card2.collectorNumber.length() == 0) return -1;
-			int value1 = 0;
-			try {
-				if (card1.collectorNumber.contains("/")) value1 = Integer.parseInt(card1.collectorNumber.split("/")[0]);
-			} catch (NumberFormatException ignored) {
-			}
-			int value2 = 0;
+			return getValue(card1) - getValue(card2);
+		}
+
+		/**
+		 * Returns the number before the slash in the collector number, or 0.
+		 */
+		static public int getValue (Card card) {
+			int slash = card.collectorNumber == null ? -1 : card.collectorNumber.indexOf('/');
+			if (slash == -1) return 0;
 			try {
-				if (card2.collectorNumber.contains("/")) value2 = Integer.parseInt(card2.collectorNumber.split("/")[0]);
+				return Integer.parseInt(card.collectorNumber.substring(0, slash));
 			} catch (NumberFormatException ignored) {
+				return 0;
 			}
-			return value1 - value2;
 		}
 	};
 
 	static public class OwnedQtyComparator implements Comparator<Card> {
-		public boolean uniqueOnly;
+		public final boolean uniqueOnly;
+
+		public OwnedQtyComparator (boolean uniqueOnly) {
+			this.uniqueOnly = uniqueOnly;
+		}
 
 		public int compare (Card card1, Card card2) {
-		    	float value1 = 0, value2 = 0;
-		    	if(uniqueOnly){
-		    	    Arcane arcane = Arcane.getInstance();
-		    	    value1 = (arcane.getTotalOwnedQty(card1.name));
-		    	    value2 = (arcane.getTotalOwnedQty(card2.name));
-		    	} else {
-		    	    value1 = ((Number)card1.getValue(CardProperty.ownedQty)).floatValue();
-		    	    value2 = ((Number)card2.getValue(CardProperty.ownedQty)).floatValue();
-		    	}
-			float difference = value1 - value2;
-			if (difference > 0) return 1;
-			if (difference < 0) return -1;
-			return 0;
+			return getValue(card1, uniqueOnly) - getValue(card2, uniqueOnly);
+		}
+
+		/**
+		 * @param uniqueOnly If true, the quantity owned of all printings of the card is returned.
+		 */
+		static public int getValue (Card card, boolean uniqueOnly) {
+			if (uniqueOnly) return Arcane.getInstance().getTotalOwnedQty(card.name);
+			return card.ownedQty;
 		}
 	};
 
@@ -576,61 +748,40 @@ public abstract class SortedTable extends JTable {
 				} else if (card2.castingCost.length() > 0) return -1;
 			}
 
-			int value1 = 0;
-			String cost1 = card1.castingCost;
-			outerLoop: for (int i = 0, n = cost1.length() - 1; i < n; i++) {
-				switch (cost1.charAt(i)) {
-				case '/':
-					break outerLoop;
-				case 'W':
-					value1 += 1;
-					break;
-				case 'U':
-					value1 += 10;
-					break;
-				case 'B':
-					value1 += 100;
-					break;
-				case 'R':
-					value1 += 1000;
-					break;
-				case 'G':
-					value1 += 10000;
-					break;
-				case 'X':
-					value1 += 100000;
-					break;
-				}
-			}
+			return getColorValue(card1) - getColorValue(card2);
+		}
 
-			int value2 = 0;
-			String cost2 = card2.castingCost;
-			outerLoop: for (int i = 0, n = cost2.length() - 1; i < n; i++) {
-				switch (cost2.charAt(i)) {
+		/**
+		 * Returns a weight for the colored and X symbols in the casting cost, used to order cards with the same converted cost.
+		 */
+		static public int getColorValue (Card card) {
+			int value = 0;
+			String cost = card.castingCost;
+			outerLoop: for (int i = 0, n = cost.length() - 1; i < n; i++) {
+				switch (cost.charAt(i)) {
 				case '/':
 					break outerLoop;
 				case 'W':
-					value2 += 1;
+					value += 1;
 					break;
 				case 'U':
-					value2 += 10;
+					value += 10;
 					break;
 				case 'B':
-					value2 += 100;
+					value += 100;
 					break;
 				case 'R':
-					value2 += 1000;
+					value += 1000;
 					break;
 				case 'G':
-					value2 += 10000;
+					value += 10000;
 					break;
 				case 'X':
-					value2 += 100000;
+					value += 100000;
 					break;
 				}
 			}
-
-			return value1 - value2;
+			return value;
 		}
 	};
 
@@ -638,64 +789,41 @@ public abstract class SortedTable extends JTable {
 		public int compare (Card card1, Card card2) {
 			int comparison = card1.manaProduced.length() - card2.manaProduced.length();
 			if (comparison != 0) return comparison;
+			return getColorValue(card1) - getColorValue(card2);
+		}
 
-			int value1 = 0;
-			String cost1 = card1.manaProduced;
-			for (int i = 0, n = cost1.length() - 1; i < n; i++) {
-				switch (cost1.charAt(i)) {
-				case 'A':
-					value1 += 1;
-					break;
-				case 'C':
-					value1 += 10;
-					break;
-				case 'W':
-					value1 += 100;
-					break;
-				case 'U':
-					value1 += 1000;
-					break;
-				case 'B':
-					value1 += 10000;
-					break;
-				case 'R':
-					value1 += 100000;
-					break;
-				case 'G':
-					value1 += 1000000;
-					break;
-				}
-			}
-
-			int value2 = 0;
-			String cost2 = card2.manaProduced;
-			for (int i = 0, n = cost2.length() - 1; i < n; i++) {
-				switch (cost2.charAt(i)) {
+		/**
+		 * Returns a weight for the symbols of the mana produced, used to order cards that produce the same amount.
+		 */
+		static public int getColorValue (Card card) {
+			int value = 0;
+			String mana = card.manaProduced;
+			for (int i = 0, n = mana.length() - 1; i < n; i++) {
+				switch (mana.charAt(i)) {
 				case 'A':
-					value2 += 1;
+					value += 1;
 					break;
 				case 'C':
-					value2 += 10;
+					value += 10;
 					break;
 				case 'W':
-					value2 += 100;
+					value += 100;
 					break;
 				case 'U':
-					value2 += 1000;
+					value += 1000;
 					break;
 				case 'B':
-					value2 += 10000;
+					value += 10000;
 					break;
 				case 'R':
-					value2 += 100000;
+					value += 100000;
 					break;
 				case 'G':
-					value2 += 1000000;
+					value += 1000000;
 					break;
 				}
 			}
-
-			return value1 - value2;
+			return value;
 		}
 	};
 }
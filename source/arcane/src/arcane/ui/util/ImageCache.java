@@ -0,0 +1,290 @@
+
+package arcane.ui.util;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Caches decoded images in two tiers. Memory holds the most recently used images as they were loaded, up to a byte budget. Disk
+ * holds a copy of every loaded image scaled down to a maximum size and stored as a JPEG, which is much faster to read than
+ * downloading the image again. Since the copy is smaller and lossy, the disk tier is only worth it for images that are slow to
+ * load, not for local files. Concurrent requests for the same key share a single load.
+ */
+public class ImageCache {
+	private final File dir;
+	private final long maxMemoryBytes, maxDiskBytes;
+	private final int maxWidth, maxHeight;
+	private final LinkedHashMap<String, BufferedImage> memory = new LinkedHashMap<String, BufferedImage>(64, 0.75f, true);
+	private final ConcurrentHashMap<String, FutureTask<BufferedImage>> loading = new ConcurrentHashMap<String, FutureTask<BufferedImage>>();
+	private long memoryBytes, diskBytes = -1;
+	private int hitCount, diskHitCount, missCount, evictionCount, diskEvictionCount;
+
+	/**
+	 * @param dir The directory for the disk tier, or null to only cache in memory.
+	 * @param maxWidth Larger images are scaled down to fit before they are written to disk.
+	 */
+	public ImageCache (File dir, long maxMemoryBytes, long maxDiskBytes, int maxWidth, int maxHeight) {
+		this.dir = dir;
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.maxDiskBytes = maxDiskBytes;
+		this.maxWidth = maxWidth;
+		this.maxHeight = maxHeight;
+	}
+
+	/**
+	 * Returns the image for the key, from memory, from disk, or by calling the loader. If the image is already being loaded for
+	 * the key, this waits for that load instead of loading it again.
+	 * @param key Identifies the image. It should change when the image changes, eg by including the file's modified time.
+	 * @return The image, or null if the loader returned null.
+	 */
+	public BufferedImage get (final String key, final Loader loader) throws IOException {
+		BufferedImage image = getCached(key);
+		if (image != null) return image;
+
+		FutureTask<BufferedImage> task = new FutureTask<BufferedImage>(new Callable<BufferedImage>() {
+			public BufferedImage call () throws IOException {
+				return load(key, loader);
+			}
+		});
+		FutureTask<BufferedImage> existing = loading.putIfAbsent(key, task);
+		if (existing != null)
+			task = existing;
+		else {
+			try {
+				task.run();
+			} finally {
+				loading.remove(key);
+			}
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException ex) {
+			throw new IOException("Interrupted loading image: " + key);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) throw (IOException)cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+			if (cause instanceof Error) throw (Error)cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Returns the image for the key if it is in memory, otherwise null.
+	 */
+	public synchronized BufferedImage getCached (String key) {
+		BufferedImage image = memory.get(key);
+		if (image != null) hitCount++;
+		return image;
+	}
+
+	private BufferedImage load (String key, Loader loader) throws IOException {
+		// Another thread may have finished loading the key after the memory lookup.
+		synchronized (this) {
+			BufferedImage image = memory.get(key);
+			if (image != null) return image;
+		}
+
+		File file = getFile(key);
+		if (file != null && file.exists()) {
+			BufferedImage image = ImageIO.read(file);
+			if (image != null) {
+				synchronized (this) {
+					diskHitCount++;
+				}
+				// Keep recently used files from being pruned first.
+				file.setLastModified(System.currentTimeMillis());
+				put(key, image);
+				return image;
+			}
+		}
+
+		synchronized (this) {
+			missCount++;
+		}
+		BufferedImage image = loader.load();
+		if (image == null) return null;
+		put(key, image);
+		if (file != null) write(scale(image), file);
+		return image;
+	}
+
+	private synchronized void put (String key, BufferedImage image) {
+		BufferedImage old = memory.put(key, image);
+		if (old != null) memoryBytes -= getBytes(old);
+		memoryBytes += getBytes(image);
+		for (Iterator<Entry<String, BufferedImage>> iter = memory.entrySet().iterator(); iter.hasNext();) {
+			if (memoryBytes <= maxMemoryBytes || memory.size() == 1) break;
+			memoryBytes -= getBytes(iter.next().getValue());
+			iter.remove();
+			evictionCount++;
+		}
+	}
+
+	/**
+	 * Returns the image scaled down to fit the maximum size, as an RGB image.
+	 */
+	private BufferedImage scale (BufferedImage image) {
+		int width = image.getWidth(), height = image.getHeight();
+		if (width > maxWidth || height > maxHeight) {
+			float scale = Math.min(maxWidth / (float)width, maxHeight / (float)height);
+			width = Math.max(1, Math.round(width * scale));
+			height = Math.max(1, Math.round(height * scale));
+		} else if (image.getType() == BufferedImage.TYPE_INT_RGB) return image;
+		BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2 = scaled.createGraphics();
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+		g2.drawImage(image, 0, 0, width, height, null);
+		g2.dispose();
+		return scaled;
+	}
+
+	private void write (BufferedImage image, File file) {
+		File tempFile = new File(file.getPath() + ".tmp");
+		try {
+			dir.mkdirs();
+			if (!ImageIO.write(image, "jpg", tempFile)) return;
+			file.delete();
+			if (!tempFile.renameTo(file)) return;
+		} catch (IOException ignored) {
+			// The image is still cached in memory.
+			tempFile.delete();
+			return;
+		}
+		synchronized (this) {
+			if (diskBytes == -1) diskBytes = getDiskBytes();
+			diskBytes += file.length();
+			if (diskBytes <= maxDiskBytes) return;
+		}
+		prune();
+	}
+
+	/**
+	 * Deletes the least recently used files until the disk tier is below 90% of its maximum size.
+	 */
+	private synchronized void prune () {
+		File[] files = dir.listFiles(jpgFilter);
+		if (files == null) return;
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare (File file1, File file2) {
+				long time1 = file1.lastModified(), time2 = file2.lastModified();
+				return time1 < time2 ? -1 : (time1 > time2 ? 1 : 0);
+			}
+		});
+		diskBytes = 0;
+		for (File file : files)
+			diskBytes += file.length();
+		for (int i = 0, n = files.length; i < n && diskBytes > maxDiskBytes * 0.9f; i++) {
+			long length = files[i].length();
+			if (!files[i].delete()) continue;
+			diskBytes -= length;
+			diskEvictionCount++;
+		}
+	}
+
+	private long getDiskBytes () {
+		File[] files = dir.listFiles(jpgFilter);
+		if (files == null) return 0;
+		long bytes = 0;
+		for (File file : files)
+			bytes += file.length();
+		return bytes;
+	}
+
+	private File getFile (String key) {
+		if (dir == null || maxDiskBytes <= 0) return null;
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+			StringBuffer buffer = new StringBuffer(36);
+			for (byte b : digest) {
+				buffer.append(Character.forDigit((b >> 4) & 0xf, 16));
+				buffer.append(Character.forDigit(b & 0xf, 16));
+			}
+			buffer.append(".jpg");
+			return new File(dir, buffer.toString());
+		} catch (NoSuchAlgorithmException ex) {
+			return null;
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Removes all images from memory. The disk tier is kept.
+	 */
+	public synchronized void clear () {
+		memory.clear();
+		memoryBytes = 0;
+	}
+
+	public synchronized long getMemoryBytes () {
+		return memoryBytes;
+	}
+
+	/**
+	 * Returns the number of requests that were found in memory.
+	 */
+	public synchronized int getHitCount () {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of requests that were read from the disk tier.
+	 */
+	public synchronized int getDiskHitCount () {
+		return diskHitCount;
+	}
+
+	/**
+	 * Returns the number of requests that called the loader.
+	 */
+	public synchronized int getMissCount () {
+		return missCount;
+	}
+
+	public synchronized int getEvictionCount () {
+		return evictionCount;
+	}
+
+	public synchronized String toString () {
+		return "hits: " + hitCount + ", disk hits: " + diskHitCount + ", misses: " + missCount + ", evictions: " + evictionCount
+			+ ", disk evictions: " + diskEvictionCount + ", images: " + memory.size() + ", memory: " + memoryBytes / 1024 + "k";
+	}
+
+	static private long getBytes (BufferedImage image) {
+		return image.getWidth() * (long)image.getHeight() * 4;
+	}
+
+	static private final FileFilter jpgFilter = new FileFilter() {
+		public boolean accept (File file) {
+			return file.getName().endsWith(".jpg");
+		}
+	};
+
+	/**
+	 * Loads an image that is not cached.
+	 */
+	static public interface Loader {
+		/**
+		 * @return The image, or null if it could not be decoded.
+		 */
+		public BufferedImage load () throws IOException;
+	}
+}
@@ -0,0 +1,13 @@
+package arcane.ui.util;
+
+/**
+ * Receives the progress of a long running operation.
+ */
+public interface Progress {
+	public void setMessage (String message);
+
+	/**
+	 * @param percentage Between 0 and 1, or -1 if the progress is unknown.
+	 */
+	public void setValue (float percentage);
+}
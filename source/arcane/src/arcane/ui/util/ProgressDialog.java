@@ -16,7 +16,7 @@ import javax.swing.JProgressBar;
 /**
  * Dialog displaying a message and a progress bar.
  */
-public class ProgressDialog extends JDialog {
+public class ProgressDialog extends JDialog implements Progress {
 	private JProgressBar progressBar;
 	private JLabel messageLabel;
 
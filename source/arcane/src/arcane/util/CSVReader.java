@@ -1,7 +1,6 @@
 
 package arcane.util;
 
-import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.Reader;
@@ -30,17 +29,27 @@ public final class CSVReader {
 	static private final int AFTER_END_QUOTE = 3;// We have just hit a quote, might be doubled or might be last one.
 	static private final int SKIPPING_TAIL = 4; // We are in blanks after the field looking for the separator
 
-	private BufferedReader reader;
-	private final String separator;
-	private final String quote;
+	private Reader reader;
+	private final char separator;
+	private final char quote;
 	private final boolean allowMultiLineFields;
 	private final boolean trim;
 	private boolean strict;
 	private int lineCount = 0;
 	private boolean allFieldsDone = true; // False: next EOL marks an empty field. True: next EOL marks the end of all fields.
 
-	// The line being parsed or null for none read yet. Unprocessed chars are removed as they are processed.
-	private String line = null;
+	// Chars read from the reader that have not been copied to a line yet.
+	private final char[] buffer = new char[8192];
+	private int bufferPosition, bufferLength;
+	private boolean skipLineFeed; // The last line ended with a CR, so a LF that follows is part of the same line ending.
+
+	// The line being parsed, ending with '\n', or a length of -1 for none read yet. Chars before the position have been processed.
+	private char[] line = new char[256];
+	private int lineLength = -1, linePosition;
+
+	// The field being parsed. The start and end exclude whitespace if trimming.
+	private char[] field = new char[64];
+	private int fieldLength, fieldStart, fieldEnd;
 
 	/**
 	 * @param fieldSeparator Field separator character. Usually ',' in North America, ';' and sometimes '\t' in Europe.
@@ -49,45 +58,49 @@ public final class CSVReader {
 	 * @param allowMultiLineFields True if reader should allow quoted fields to span more than one line. Microsoft Excel can
 	 *           generate files like this.
 	 */
-	public CSVReader (Reader reader, String fieldSeparator, String textQualifier, boolean trim, boolean allowMultiLineFields) {
+	public CSVReader (Reader reader, char fieldSeparator, char textQualifier, boolean trim, boolean allowMultiLineFields) {
 		if (reader == null) throw new IllegalArgumentException("reader cannot be null.");
-
-		// Convert Reader to BufferedReader if necessary.
-		if (reader instanceof BufferedReader)
-			this.reader = (BufferedReader)reader;
-		else
-			this.reader = new BufferedReader(reader);
-
+		this.reader = reader;
 		this.separator = fieldSeparator;
 		this.quote = textQualifier;
 		this.allowMultiLineFields = allowMultiLineFields;
 		this.trim = trim;
 	}
 
+	/**
+	 * @param fieldSeparator A single field separator character. Usually "," in North America, ";" and sometimes "\t" in Europe.
+	 * @param textQualifier A single character used to enclose fields containing a separator, usually "\"".
+	 * @param trim True if reader should trim leading/trailing whitespace (eg, blanks, Cr, Lf, tab) from fields.
+	 * @param allowMultiLineFields True if reader should allow quoted fields to span more than one line. Microsoft Excel can
+	 *           generate files like this.
+	 */
+	public CSVReader (Reader reader, String fieldSeparator, String textQualifier, boolean trim, boolean allowMultiLineFields) {
+		this(reader, toChar(fieldSeparator, "fieldSeparator"), toChar(textQualifier, "textQualifier"), trim, allowMultiLineFields);
+	}
+
 	/**
 	 * Convenience constructor defaulting to: comma separator, '"' for quote, with trimming, no multiline fields.
 	 */
 	public CSVReader (Reader reader) {
-		this(reader, ",", "\"", true, false);
+		this(reader, ',', '"', true, false);
+	}
+
+	static private char toChar (String value, String name) {
+		if (value == null || value.length() != 1) throw new IllegalArgumentException(name + " must be a single character: " + value);
+		return value.charAt(0);
 	}
 
 	/**
 	 * Categorize a character for the finite state machine.
 	 * @return int representing the character's category.
 	 */
-	private int categorize (String c) {
-		if (c.equals(separator)) return SEPARATOR;
-		if (c.equals(" ") || c.equals("\r")) return WHITESPACE;
-		if (c.equals("\n")) return EOL; // Artificially applied to end of line.
-
-		if (c.equals(quote)) {
-			return QUOTE;
-		}
-		if (Character.isWhitespace(c.charAt(0))) {
-			return WHITESPACE;
-		} else {
-			return ORDINARY;
-		}
+	private int categorize (char c) {
+		if (c == separator) return SEPARATOR;
+		if (c == ' ' || c == '\r') return WHITESPACE;
+		if (c == '\n') return EOL; // Artificially applied to end of line.
+		if (c == quote) return QUOTE;
+		if (Character.isWhitespace(c)) return WHITESPACE;
+		return ORDINARY;
 	}
 
 	/**
@@ -109,6 +122,25 @@ public final class CSVReader {
 		return fields;
 	}
 
+	/**
+	 * Reads all remaining rows, passing each field to the visitor. No strings or lists are created for the fields.
+	 * @throws IOException Some problem reading the file, possibly malformed data.
+	 */
+	public void read (Visitor visitor) throws IOException {
+		int index = 0;
+		try {
+			while (true) {
+				if (readField())
+					visitor.field(index++, field, fieldStart, fieldEnd - fieldStart);
+				else {
+					if (!visitor.endRow(index)) return;
+					index = 0;
+				}
+			}
+		} catch (EOFException ignored) {
+		}
+	}
+
 	/**
 	 * Reads a single field from the CSV file.
 	 * @return String value, even if the field is numeric. Surrounded and embedded double quotes are stripped. Possibly an empty
@@ -117,7 +149,18 @@ public final class CSVReader {
 	 * @throws IOException Error reading the file, possibly malformed data.
 	 */
 	public String getField () throws EOFException, IOException {
-		StringBuffer field = new StringBuffer(allowMultiLineFields ? 512 : 64);
+		if (!readField()) return null;
+		return new String(field, fieldStart, fieldEnd - fieldStart);
+	}
+
+	/**
+	 * Reads a single field into the field buffer.
+	 * @return false for end of line.
+	 * @throws EOFException At end of file after all fields have been read.
+	 * @throws IOException Error reading the file, possibly malformed data.
+	 */
+	private boolean readField () throws EOFException, IOException {
+		fieldLength = 0;
 		// Implement the parser as a finite state automation with five states.
 
 		int state = SEEKING_START; // Start seeking, even if partway through a line.
@@ -126,15 +169,12 @@ public final class CSVReader {
 		while (true) {
 			getLineIfNeeded();
 
+			char[] line = this.line;
 			charLoop:
 			// Loop for each char in the line to find a field. Guaranteed to leave early by hitting EOL.
-			for (int i = 0; i < line.length(); i++) {
-				String c = line.substring(i, i + 1);
+			for (int i = linePosition, n = lineLength; i < n; i++) {
+				char c = line[i];
 				int category = categorize(c);
-				if (false) {
-					// For debugging.
-					System.out.println("char:" + c + ", state:" + state + ", field:" + field.length());
-				}
 				switch (state) {
 				case SEEKING_START: { // In blanks before field.
 					switch (category) {
@@ -148,23 +188,23 @@ public final class CSVReader {
 
 					case SEPARATOR:
 						// End of empty field.
-						line = line.substring(i + 1);
-						return "";
+						linePosition = i + 1;
+						return endField();
 
 					case EOL:
 						// End of line.
 						if (allFieldsDone) {
-							// null to mark end of line.
-							line = null;
-							return null;
+							// false to mark end of line.
+							lineLength = -1;
+							return false;
 						}
 						// Empty field, usually after a field seperator.
 						allFieldsDone = true;
-						line = line.substring(i);
-						return "";
+						linePosition = i;
+						return endField();
 
 					case ORDINARY:
-						field.append(c);
+						append(c);
 						state = IN_PLAIN;
 						break;
 					}
@@ -176,25 +216,25 @@ public final class CSVReader {
 						if (strict) {
 							throw new IOException("Malformed CSV stream. Missing quote at start of field on line: " + lineCount);
 						}
-						field.append(c);
+						append(c);
 						break;
 
 					case SEPARATOR:
 						// Done.
-						line = line.substring(i + 1);
-						return trim(field.toString());
+						linePosition = i + 1;
+						return endField();
 
 					case EOL:
-						line = line.substring(i); // Push EOL back.
+						linePosition = i; // Push EOL back.
 						allFieldsDone = true;
-						return trim(field.toString());
+						return endField();
 
 					case WHITESPACE:
-						field.append(' ');
+						append(' ');
 						break;
 
 					case ORDINARY:
-						field.append(c);
+						append(c);
 						break;
 					}
 					break;
@@ -208,9 +248,10 @@ public final class CSVReader {
 
 					case EOL:
 						if (allowMultiLineFields) {
-							field.append(lineSeparator);
-							// Done with that line, but not with the field. Don't return a null to mark the end of the line.
-							line = null;
+							for (int ii = 0, nn = lineSeparator.length(); ii < nn; ii++)
+								append(lineSeparator.charAt(ii));
+							// Done with that line, but not with the field. Don't return false to mark the end of the line.
+							lineLength = -1;
 							// Read next line and seek the end of the quoted field with the state still IN_QUOTED.
 							break charLoop;
 						}
@@ -219,17 +260,16 @@ public final class CSVReader {
 						if (strict) {
 							throw new IOException("Malformed CSV stream. Missing quote after field on line: " + lineCount);
 						}
-						line = line.substring(i); // Push back EOL.
-						allFieldsDone = true;
-						return trim(field.toString());
+						linePosition = i; // Push back EOL.
+						return endField();
 
 					case WHITESPACE:
-						field.append(' ');
+						append(' ');
 						break;
 
 					case SEPARATOR:
 					case ORDINARY:
-						field.append(c);
+						append(c);
 						break;
 					}
 					break;
@@ -239,19 +279,19 @@ public final class CSVReader {
 					switch (category) {
 					case QUOTE:
 						// Was a double quote (a literal "). */
-						field.append(c);
+						append(c);
 						state = IN_QUOTED;
 						break;
 
 					case SEPARATOR:
 						// Done with field.
-						line = line.substring(i + 1);
-						return trim(field.toString());
+						linePosition = i + 1;
+						return endField();
 
 					case EOL:
-						line = line.substring(i); // Push back EOL.
+						linePosition = i; // Push back EOL.
 						allFieldsDone = true;
-						return trim(field.toString());
+						return endField();
 
 					case WHITESPACE:
 						// Ignore trailing spaces up to separator.
@@ -262,8 +302,8 @@ public final class CSVReader {
 						if (strict) {
 							throw new IOException("Malformed CSV stream, missing separator after field on line: " + lineCount);
 						}
-						field.append(c);
-						state = ORDINARY;
+						append(c);
+						state = IN_PLAIN;
 						break;
 
 					}
@@ -274,13 +314,13 @@ public final class CSVReader {
 					switch (category) {
 					case SEPARATOR:
 						// Done.
-						line = line.substring(i + 1);
-						return trim(field.toString());
+						linePosition = i + 1;
+						return endField();
 
 					case EOL:
-						line = line.substring(i); // Push back EOL.
+						linePosition = i; // Push back EOL.
 						allFieldsDone = true;
-						return trim(field.toString());
+						return endField();
 
 					case WHITESPACE:
 						// Ignore trailing spaces up to separator.
@@ -299,12 +339,30 @@ public final class CSVReader {
 		}
 	}
 
+	private void append (char c) {
+		if (fieldLength == field.length) {
+			char[] newField = new char[fieldLength * 2];
+			System.arraycopy(field, 0, newField, 0, fieldLength);
+			field = newField;
+		}
+		field[fieldLength++] = c;
+	}
+
 	/**
-	 * Trim the string, but only if trimming is on.
+	 * Sets the start and end of the field, trimming whitespace if trimming is on.
+	 * @return true.
 	 */
-	private String trim (String s) {
-		if (trim) return s.trim();
-		return s;
+	private boolean endField () {
+		int start = 0, end = fieldLength;
+		if (trim) {
+			while (start < end && field[start] <= ' ')
+				start++;
+			while (end > start && field[end - 1] <= ' ')
+				end--;
+		}
+		fieldStart = start;
+		fieldEnd = end;
+		return true;
 	}
 
 	/**
@@ -369,16 +427,54 @@ public final class CSVReader {
 	 * @throws IOException Error reading the file, possibly malformed data.
 	 */
 	private void getLineIfNeeded () throws EOFException, IOException {
-		if (line == null) {
+		if (lineLength == -1) {
 			if (reader == null) throw new IllegalStateException("This CSVReader has been closed.");
 			allFieldsDone = false;
-			line = reader.readLine(); // Strips platform specific line ending.
-			if (line == null) throw new EOFException();
-			line += '\n'; // Apply standard line end for parser to find.
+			if (!readLine()) throw new EOFException();
 			lineCount++;
 		}
 	}
 
+	/**
+	 * Reads the next line into the line buffer, stripping the line ending (LF, CR or CRLF) and applying a standard line end for the
+	 * parser to find.
+	 * @return false if there are no more lines.
+	 */
+	private boolean readLine () throws IOException {
+		char[] line = this.line;
+		int length = 0;
+		while (true) {
+			if (bufferPosition == bufferLength) {
+				bufferPosition = 0;
+				bufferLength = Math.max(0, reader.read(buffer, 0, buffer.length));
+				if (bufferLength == 0) {
+					if (length == 0) return false;
+					break;
+				}
+			}
+			char c = buffer[bufferPosition++];
+			if (skipLineFeed) {
+				skipLineFeed = false;
+				if (c == '\n') continue;
+			}
+			if (c == '\n') break;
+			if (c == '\r') {
+				skipLineFeed = true;
+				break;
+			}
+			if (length + 1 == line.length) {
+				char[] newLine = new char[line.length * 2];
+				System.arraycopy(line, 0, newLine, 0, length);
+				this.line = line = newLine;
+			}
+			line[length++] = c;
+		}
+		line[length++] = '\n';
+		lineLength = length;
+		linePosition = 0;
+		return true;
+	}
+
 	/**
 	 * Skips over the specified number of fields.
 	 * @throws EOFException At end of file after all fields have been read.
@@ -402,14 +498,14 @@ public final class CSVReader {
 	 * @return false if end of file has been reached.
 	 */
 	public boolean skipToNextLine () throws IOException {
-		if (line == null) {
+		if (lineLength == -1) {
 			try {
 				getLineIfNeeded();
 			} catch (EOFException ex) {
 				return false;
 			}
 		}
-		line = null;
+		lineLength = -1;
 		return true;
 	}
 
@@ -429,4 +525,20 @@ public final class CSVReader {
 	public void setStrict (boolean strict) {
 		this.strict = strict;
 	}
+
+	/**
+	 * Receives the fields of each row from {@link CSVReader#read(Visitor)}.
+	 */
+	static public interface Visitor {
+		/**
+		 * Called for each field in a row. The chars are only valid until this method returns.
+		 */
+		public void field (int index, char[] chars, int offset, int length);
+
+		/**
+		 * Called at the end of each row.
+		 * @return false to stop reading.
+		 */
+		public boolean endRow (int fieldCount);
+	}
 }
@@ -0,0 +1,344 @@
+
+package arcane.util;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares {@link CSVReader} against the reader it replaced, which parsed each line through one character substrings. Both
+ * readers must return the same rows for every file and for randomized input, then each file is timed with both readers.
+ */
+public class CSVReaderBenchmark {
+	static private final int rounds = 10;
+	static private final int randomInputs = 200000;
+
+	static public void main (String[] args) throws Exception {
+		if (args.length == 0) {
+			System.out.println("Usage: CSVReaderBenchmark csvFile...");
+			System.out.println("Files are read as UTF-8 with a comma separator, trimming and multiline fields.");
+			return;
+		}
+
+		int mismatches = compareRandom(new Random(7));
+		System.out.println(randomInputs + " random inputs, mismatches: " + mismatches);
+
+		for (String arg : args) {
+			String text = read(new File(arg));
+			List<Object> oldRows = readOld(text, ",", true, true, false);
+			List<Object> newRows = readNew(text, ",", true, true, false);
+			System.out.println(arg + ": " + oldRows.size() + " rows, identical: " + oldRows.equals(newRows));
+			// Later rounds are timed once the JIT has compiled both readers.
+			for (int round = 1; round <= rounds; round++) {
+				long start = System.nanoTime();
+				readOld(text, ",", true, true, false);
+				long oldNanos = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				readNew(text, ",", true, true, false);
+				long newNanos = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				final int[] length = new int[1];
+				new CSVReader(new StringReader(text), ',', '"', true, true).read(new CSVReader.Visitor() {
+					public void field (int index, char[] chars, int offset, int count) {
+						length[0] += count;
+					}
+
+					public boolean endRow (int fieldCount) {
+						return true;
+					}
+				});
+				long visitorNanos = System.nanoTime() - start;
+
+				System.out.println("Round " + round + ": old " + oldNanos / 1000000 + "ms, getFields " + newNanos / 1000000
+					+ "ms, visitor " + visitorNanos / 1000000 + "ms");
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of random inputs for which the readers returned different rows or failed differently.
+	 */
+	static private int compareRandom (Random random) {
+		String chars = "ab,\" \n\r\t;x";
+		String[] separators = {",", " ", "\t"};
+		int mismatches = 0;
+		for (int i = 0; i < randomInputs; i++) {
+			StringBuffer buffer = new StringBuffer(32);
+			for (int j = 0, n = random.nextInt(30); j < n; j++)
+				buffer.append(chars.charAt(random.nextInt(chars.length())));
+			String text = buffer.toString();
+			String separator = separators[random.nextInt(separators.length)];
+			boolean trim = random.nextBoolean(), multiLine = random.nextBoolean(), strict = random.nextInt(4) == 0;
+			List<Object> oldRows = readOld(text, separator, trim, multiLine, strict);
+			if (oldRows.equals(readNew(text, separator, trim, multiLine, strict))) continue;
+			if (mismatches++ < 5) System.out.println("Mismatch: " + text.replace("\n", "\\n").replace("\r", "\\r"));
+		}
+		return mismatches;
+	}
+
+	static private List<Object> readOld (String text, String separator, boolean trim, boolean multiLine, boolean strict) {
+		List<Object> rows = new ArrayList<Object>();
+		try {
+			SubstringCSVReader reader = new SubstringCSVReader(new StringReader(text), separator, "\"", trim, multiLine);
+			reader.strict = strict;
+			while (true) {
+				List<String> fields = reader.getFields();
+				if (fields == null) break;
+				rows.add(fields);
+			}
+		} catch (IOException ex) {
+			rows.add(ex.getClass());
+		}
+		return rows;
+	}
+
+	static private List<Object> readNew (String text, String separator, boolean trim, boolean multiLine, boolean strict) {
+		List<Object> rows = new ArrayList<Object>();
+		try {
+			CSVReader reader = new CSVReader(new StringReader(text), separator, "\"", trim, multiLine);
+			reader.setStrict(strict);
+			while (true) {
+				List<String> fields = reader.getFields();
+				if (fields == null) break;
+				rows.add(fields);
+			}
+		} catch (IOException ex) {
+			rows.add(ex.getClass());
+		}
+		return rows;
+	}
+
+	static private String read (File file) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			StringBuffer buffer = new StringBuffer((int)file.length());
+			char[] chars = new char[8192];
+			while (true) {
+				int count = reader.read(chars);
+				if (count == -1) break;
+				buffer.append(chars, 0, count);
+			}
+			return buffer.toString();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * The field parsing of the previous CSVReader, kept unchanged as the reference for comparisons.
+	 */
+	static private class SubstringCSVReader {
+		static private String lineSeparator = System.getProperty("line.separator");
+		static {
+			if (lineSeparator == null) lineSeparator = "\015012"; // crlf in octal.
+		}
+
+		static private final int EOL = 0;
+		static private final int ORDINARY = 1;
+		static private final int QUOTE = 2;
+		static private final int SEPARATOR = 3;
+		static private final int WHITESPACE = 4;
+
+		static private final int SEEKING_START = 0;
+		static private final int IN_PLAIN = 1;
+		static private final int IN_QUOTED = 2;
+		static private final int AFTER_END_QUOTE = 3;
+		static private final int SKIPPING_TAIL = 4;
+
+		private final BufferedReader reader;
+		private final String separator;
+		private final String quote;
+		private final boolean allowMultiLineFields;
+		private final boolean trim;
+		boolean strict;
+		private int lineCount = 0;
+		private boolean allFieldsDone = true;
+		private String line = null;
+
+		SubstringCSVReader (Reader reader, String separator, String quote, boolean trim, boolean allowMultiLineFields) {
+			this.reader = new BufferedReader(reader);
+			this.separator = separator;
+			this.quote = quote;
+			this.allowMultiLineFields = allowMultiLineFields;
+			this.trim = trim;
+		}
+
+		private int categorize (String c) {
+			if (c.equals(separator)) return SEPARATOR;
+			if (c.equals(" ") || c.equals("\r")) return WHITESPACE;
+			if (c.equals("\n")) return EOL;
+			if (c.equals(quote)) return QUOTE;
+			if (Character.isWhitespace(c.charAt(0))) return WHITESPACE;
+			return ORDINARY;
+		}
+
+		List<String> getFields () throws IOException {
+			List<String> fields = new ArrayList<String>(30);
+			try {
+				while (true) {
+					String field = getField();
+					if (field == null) break;
+					fields.add(field);
+				}
+			} catch (EOFException ex) {
+				return null;
+			}
+			return fields;
+		}
+
+		private String getField () throws IOException {
+			StringBuffer field = new StringBuffer(allowMultiLineFields ? 512 : 64);
+			int state = SEEKING_START;
+			while (true) {
+				getLineIfNeeded();
+
+				charLoop:
+				for (int i = 0; i < line.length(); i++) {
+					String c = line.substring(i, i + 1);
+					int category = categorize(c);
+					switch (state) {
+					case SEEKING_START: {
+						switch (category) {
+						case WHITESPACE:
+							break;
+						case QUOTE:
+							state = IN_QUOTED;
+							break;
+						case SEPARATOR:
+							line = line.substring(i + 1);
+							return "";
+						case EOL:
+							if (allFieldsDone) {
+								line = null;
+								return null;
+							}
+							allFieldsDone = true;
+							line = line.substring(i);
+							return "";
+						case ORDINARY:
+							field.append(c);
+							state = IN_PLAIN;
+							break;
+						}
+						break;
+					}
+					case IN_PLAIN: {
+						switch (category) {
+						case QUOTE:
+							if (strict) throw new IOException("Malformed CSV stream. Missing quote at start of field on line: " + lineCount);
+							field.append(c);
+							break;
+						case SEPARATOR:
+							line = line.substring(i + 1);
+							return trim(field.toString());
+						case EOL:
+							line = line.substring(i);
+							allFieldsDone = true;
+							return trim(field.toString());
+						case WHITESPACE:
+							field.append(' ');
+							break;
+						case ORDINARY:
+							field.append(c);
+							break;
+						}
+						break;
+					}
+					case IN_QUOTED: {
+						switch (category) {
+						case QUOTE:
+							state = AFTER_END_QUOTE;
+							break;
+						case EOL:
+							if (allowMultiLineFields) {
+								field.append(lineSeparator);
+								line = null;
+								break charLoop;
+							}
+							allFieldsDone = true;
+							if (strict) throw new IOException("Malformed CSV stream. Missing quote after field on line: " + lineCount);
+							line = line.substring(i);
+							allFieldsDone = true;
+							return trim(field.toString());
+						case WHITESPACE:
+							field.append(' ');
+							break;
+						case SEPARATOR:
+						case ORDINARY:
+							field.append(c);
+							break;
+						}
+						break;
+					}
+					case AFTER_END_QUOTE: {
+						switch (category) {
+						case QUOTE:
+							field.append(c);
+							state = IN_QUOTED;
+							break;
+						case SEPARATOR:
+							line = line.substring(i + 1);
+							return trim(field.toString());
+						case EOL:
+							line = line.substring(i);
+							allFieldsDone = true;
+							return trim(field.toString());
+						case WHITESPACE:
+							state = SKIPPING_TAIL;
+							break;
+						case ORDINARY:
+							if (strict) throw new IOException("Malformed CSV stream, missing separator after field on line: " + lineCount);
+							field.append(c);
+							state = ORDINARY;
+							break;
+						}
+						break;
+					}
+					case SKIPPING_TAIL: {
+						switch (category) {
+						case SEPARATOR:
+							line = line.substring(i + 1);
+							return trim(field.toString());
+						case EOL:
+							line = line.substring(i);
+							allFieldsDone = true;
+							return trim(field.toString());
+						case WHITESPACE:
+							break;
+						case QUOTE:
+						case ORDINARY:
+							throw new IOException("Malformed CSV stream, missing separator after field on line: " + lineCount);
+						}
+						break;
+					}
+					}
+				}
+			}
+		}
+
+		private String trim (String s) {
+			if (trim) return s.trim();
+			return s;
+		}
+
+		private void getLineIfNeeded () throws IOException {
+			if (line == null) {
+				allFieldsDone = false;
+				line = reader.readLine();
+				if (line == null) throw new EOFException();
+				line += '\n';
+				lineCount++;
+			}
+		}
+	}
+}
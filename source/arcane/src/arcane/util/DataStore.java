@@ -211,6 +211,10 @@ public abstract class DataStore<T extends DataStore.DataStoreConnection> {
 	public class DataStoreConnection {
 		public final Connection conn;
 		private PreparedStatement getCount;
+		private int batchSize;
+		private List<PreparedStatement> batchStatements;
+		private int batchCount, rowCount;
+		private long bulkLoadStartTime;
 
 		public DataStoreConnection () throws SQLException {
 			conn = openConnection();
@@ -225,6 +229,64 @@ public abstract class DataStore<T extends DataStore.DataStoreConnection> {
 			return conn.prepareStatement(sql(sql));
 		}
 
+		/**
+		 * Starts loading many rows at once. Until {@link #endBulkLoad()} is called, autocommit is off and statements passed to
+		 * {@link #addBatch(PreparedStatement)} are executed as JDBC batches, all in a single transaction. Batches for different
+		 * statements are executed in the order the statements were first added.
+		 * @param batchSize The number of rows to add before a batch is executed.
+		 */
+		public void beginBulkLoad (int batchSize) throws SQLException {
+			if (batchStatements != null) throw new IllegalStateException("Bulk load has already begun.");
+			if (batchSize < 1) throw new IllegalArgumentException("batchSize must be > 0: " + batchSize);
+			this.batchSize = batchSize;
+			batchStatements = new ArrayList<PreparedStatement>();
+			batchCount = 0;
+			rowCount = 0;
+			bulkLoadStartTime = System.currentTimeMillis();
+			conn.setAutoCommit(false);
+		}
+
+		/**
+		 * Adds the statement's current parameters to its batch, executing the pending batches if the batch size was reached. If
+		 * a bulk load has not begun, the statement is executed immediately.
+		 */
+		public void addBatch (PreparedStatement statement) throws SQLException {
+			if (batchStatements == null) {
+				statement.executeUpdate();
+				return;
+			}
+			statement.addBatch();
+			if (!batchStatements.contains(statement)) batchStatements.add(statement);
+			rowCount++;
+			if (++batchCount >= batchSize) executeBatches();
+		}
+
+		private void executeBatches () throws SQLException {
+			for (PreparedStatement statement : batchStatements)
+				statement.executeBatch();
+			batchCount = 0;
+		}
+
+		/**
+		 * Executes any pending batches and commits the bulk load.
+		 */
+		public void endBulkLoad () throws SQLException {
+			if (batchStatements == null) throw new IllegalStateException("Bulk load has not begun.");
+			boolean committed = false;
+			try {
+				executeBatches();
+				conn.commit();
+				committed = true;
+			} finally {
+				batchStatements = null;
+				if (!committed) conn.rollback();
+				conn.setAutoCommit(true);
+			}
+			long time = Math.max(1, System.currentTimeMillis() - bulkLoadStartTime);
+			System.out.println("Loaded " + rowCount + " rows into " + getTableName() + " in " + time + "ms (" + rowCount * 1000L
+				/ time + " rows/s).");
+		}
+
 		/**
 		 * Releases resources associated with this connection.
 		 * @throws SQLException if the close failed.
@@ -0,0 +1,123 @@
+
+package arcane.util;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import arcane.util.PriorityExecutor.Lane;
+
+/**
+ * Finds files under a directory without touching the file system for each lookup. The directory tree is scanned once in the
+ * background. Lookups then only check a map. The map is rebuilt when a directory's modified time changes, which is checked at most
+ * every few seconds. Until the first scan finishes, lookups check the file system directly.
+ */
+public class FileIndex {
+	static private final long checkInterval = 5000;
+
+	private final String prefix;
+	private final File root;
+	private volatile Map<String, String> paths;
+	private File[] dirs = new File[0];
+	private long[] dirModified = new long[0];
+	private volatile long lastCheckTime;
+	private boolean scanQueued;
+
+	/**
+	 * @param prefix The directory to index. Lookups must start with this exact text. It must end with a path separator, otherwise
+	 *           lookups always check the file system.
+	 */
+	public FileIndex (String prefix) {
+		this.prefix = prefix;
+		root = new File(prefix);
+		if (prefix.endsWith("/") || prefix.endsWith("\\")) queueScan();
+	}
+
+	public boolean isFor (String prefix) {
+		return this.prefix.equals(prefix);
+	}
+
+	/**
+	 * Returns the path of the file if it exists, otherwise null. The case of the path and its separators are ignored, so the
+	 * returned path may differ from the path that was passed in.
+	 */
+	public String find (String path) {
+		Map<String, String> paths = this.paths;
+		if (paths == null || !path.startsWith(prefix)) return new File(path).exists() ? path : null;
+		if (System.currentTimeMillis() - lastCheckTime > checkInterval) queueScan();
+		return paths.get(getKey(path.substring(prefix.length())));
+	}
+
+	/**
+	 * Returns true once the directory has been scanned.
+	 */
+	public boolean isScanned () {
+		return paths != null;
+	}
+
+	private synchronized void queueScan () {
+		if (scanQueued) return;
+		scanQueued = true;
+		lastCheckTime = System.currentTimeMillis();
+		// Not the background lane, which may drop the task and leave scanQueued set. Checking for changes is cheap.
+		Util.threadPool.execute(Lane.load, new Runnable() {
+			public void run () {
+				try {
+					if (paths == null || isChanged()) scan();
+				} finally {
+					synchronized (FileIndex.this) {
+						scanQueued = false;
+						lastCheckTime = System.currentTimeMillis();
+					}
+				}
+			}
+		});
+	}
+
+	private boolean isChanged () {
+		for (int i = 0, n = dirs.length; i < n; i++)
+			if (dirs[i].lastModified() != dirModified[i]) return true;
+		return false;
+	}
+
+	private void scan () {
+		Map<String, String> paths = new HashMap<String, String>(4096);
+		LinkedList<File> dirs = new LinkedList<File>();
+		LinkedList<Long> dirModified = new LinkedList<Long>();
+		LinkedList<File> queue = new LinkedList<File>();
+		LinkedList<String> queuePaths = new LinkedList<String>();
+		queue.add(root);
+		queuePaths.add("");
+		while (!queue.isEmpty()) {
+			File dir = queue.removeFirst();
+			String dirPath = queuePaths.removeFirst();
+			// Read the modified time before listing, so a change during the listing is seen by the next check.
+			dirs.add(dir);
+			dirModified.add(dir.lastModified());
+			File[] files = dir.listFiles();
+			if (files == null) continue;
+			for (File file : files) {
+				String path = dirPath + file.getName();
+				if (file.isDirectory()) {
+					queue.add(file);
+					queuePaths.add(path + "/");
+				} else {
+					String key = getKey(path);
+					if (!paths.containsKey(key)) paths.put(key, prefix + path);
+				}
+			}
+		}
+		long[] modified = new long[dirModified.size()];
+		int i = 0;
+		for (Long time : dirModified)
+			modified[i++] = time;
+		this.dirs = dirs.toArray(new File[dirs.size()]);
+		this.dirModified = modified;
+		this.paths = paths;
+	}
+
+	static private String getKey (String path) {
+		return path.replace('\\', '/').toLowerCase();
+	}
+}
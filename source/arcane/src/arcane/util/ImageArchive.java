@@ -0,0 +1,280 @@
+
+package arcane.util;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+/**
+ * A single file holding all the images of a directory, read through a memory mapped buffer. The header maps each image file name
+ * to its bytes, which are only decoded when the image is read. An image in an archive is addressed by a path of the form
+ * "images/LEA.pack!Name.jpg", for an archive of the "images/LEA" directory.
+ */
+public class ImageArchive {
+	static public final String extension = ".pack";
+
+	static private final int magic = 0x41524349; // ARCI
+	static private final int formatVersion = 1;
+	static private final long checkInterval = 5000;
+	static private final long maxMappedBytes = 256 * 1024 * 1024;
+	static private final LinkedHashMap<String, ImageArchive> archives = new LinkedHashMap<String, ImageArchive>(16, 0.75f, true);
+	static private long mappedBytes;
+
+	private final long lastModified, length;
+	private final ByteBuffer buffer;
+	private final Map<String, int[]> entries;
+	private long checkTime;
+
+	private ImageArchive (File file) throws IOException {
+		checkTime = System.currentTimeMillis();
+		lastModified = file.lastModified();
+		length = file.length();
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = input.getChannel();
+			// The mapping stays valid after the channel is closed.
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			input.close();
+		}
+		try {
+			if (buffer.getInt() != magic) throw new IOException("Invalid image archive: " + file);
+			if (buffer.getInt() != formatVersion) throw new IOException("Unsupported image archive version: " + file);
+			int count = buffer.getInt();
+			entries = new HashMap<String, int[]>(count * 2);
+			int[][] ranges = new int[count][];
+			for (int i = 0; i < count; i++) {
+				byte[] name = new byte[buffer.getShort() & 0xffff];
+				buffer.get(name);
+				ranges[i] = new int[] {buffer.getInt(), buffer.getInt()};
+				entries.put(getKey(new String(name, "UTF-8")), ranges[i]);
+			}
+			// Offsets are stored relative to the end of the header.
+			int dataStart = buffer.position();
+			for (int[] range : ranges) {
+				range[0] += dataStart;
+				if (range[0] < dataStart || range[1] < 0 || range[1] > buffer.capacity() - range[0])
+					throw new IOException("Invalid image archive: " + file);
+			}
+		} catch (RuntimeException ex) {
+			throw new IOException("Invalid image archive: " + file);
+		}
+	}
+
+	/**
+	 * Returns true if the archive has an image with the file name, ignoring case.
+	 */
+	public boolean contains (String name) {
+		return entries.containsKey(getKey(name));
+	}
+
+	/**
+	 * Decodes the image with the file name.
+	 * @return The image, or null if the archive does not have the image or it could not be decoded.
+	 */
+	public BufferedImage read (String name) throws IOException {
+		int[] range = entries.get(getKey(name));
+		if (range == null) return null;
+		ByteBuffer bytes = buffer.duplicate();
+		bytes.position(range[0]);
+		bytes.limit(range[0] + range[1]);
+		// Otherwise ImageIO copies the stream to a temporary file before decoding it.
+		return ImageIO.read(new MemoryCacheImageInputStream(new ByteBufferInputStream(bytes)));
+	}
+
+	public int size () {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the archive for the file, which is opened again if it has changed since it was last opened. Changes are checked for
+	 * at most every few seconds. The least recently used archives are released once too many bytes are mapped, which matters for
+	 * the address space of a 32 bit JVM.
+	 */
+	static public ImageArchive open (File file) throws IOException {
+		String key = file.getAbsolutePath();
+		synchronized (archives) {
+			ImageArchive archive = archives.get(key);
+			if (archive != null) {
+				long time = System.currentTimeMillis();
+				if (time - archive.checkTime < checkInterval) return archive;
+				if (archive.lastModified == file.lastModified() && archive.length == file.length()) {
+					archive.checkTime = time;
+					return archive;
+				}
+			}
+			ImageArchive newArchive = new ImageArchive(file);
+			if (archive != null) mappedBytes -= archive.buffer.capacity();
+			archives.put(key, newArchive);
+			mappedBytes += newArchive.buffer.capacity();
+			// The mappings are unmapped once they are garbage collected.
+			for (Iterator<ImageArchive> iter = archives.values().iterator(); iter.hasNext();) {
+				if (mappedBytes <= maxMappedBytes || archives.size() == 1) break;
+				mappedBytes -= iter.next().buffer.capacity();
+				iter.remove();
+			}
+			return newArchive;
+		}
+	}
+
+	/**
+	 * Returns the path of an image in an archive.
+	 */
+	static public String getPath (String archivePath, String name) {
+		return archivePath + "!" + name;
+	}
+
+	/**
+	 * Returns the file holding the image at the path, which is either the archive or the image file itself.
+	 */
+	static public File getFile (String path) {
+		int index = path.indexOf(extension + "!");
+		if (index == -1) return new File(path);
+		return new File(path.substring(0, index + extension.length()));
+	}
+
+	/**
+	 * Decodes the image at the path, which can be an image file or an image in an archive.
+	 * @return The image, or null if it could not be decoded.
+	 */
+	static public BufferedImage readImage (String path) throws IOException {
+		int index = path.indexOf(extension + "!");
+		if (index == -1) return ImageIO.read(new File(path));
+		int nameStart = index + extension.length();
+		return open(new File(path.substring(0, nameStart))).read(path.substring(nameStart + 1));
+	}
+
+	/**
+	 * Writes the files in the directory that end with the suffix to an archive. Subdirectories are not included.
+	 * @return The number of images written.
+	 */
+	static public int write (File dir, File archiveFile, String suffix) throws IOException {
+		File[] files = dir.listFiles(FileUtil.filenameEndsWith(suffix.toLowerCase()));
+		if (files == null) throw new IOException("Unable to list directory: " + dir);
+		Arrays.sort(files);
+
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(files.length * 32 + 12);
+		DataOutputStream header = new DataOutputStream(headerBytes);
+		header.writeInt(magic);
+		header.writeInt(formatVersion);
+		header.writeInt(files.length);
+		long offset = 0;
+		for (File file : files) {
+			byte[] name = file.getName().getBytes("UTF-8");
+			header.writeShort(name.length);
+			header.write(name);
+			header.writeInt((int)offset);
+			header.writeInt((int)file.length());
+			offset += file.length();
+			if (offset > Integer.MAX_VALUE) throw new IOException("Too many images for one archive: " + dir);
+		}
+		header.close();
+
+		File tempFile = new File(archiveFile.getPath() + ".tmp");
+		FileOutputStream output = new FileOutputStream(tempFile);
+		try {
+			output.write(headerBytes.toByteArray());
+			byte[] buffer = new byte[16384];
+			for (File file : files) {
+				// Copy exactly the length written to the header, in case the file changed since.
+				InputStream input = new FileInputStream(file);
+				try {
+					long remaining = file.length();
+					while (remaining > 0) {
+						int count = input.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+						if (count == -1) throw new IOException("File changed while archiving: " + file);
+						output.write(buffer, 0, count);
+						remaining -= count;
+					}
+				} finally {
+					input.close();
+				}
+			}
+		} finally {
+			output.close();
+		}
+		archiveFile.delete();
+		if (!tempFile.renameTo(archiveFile)) throw new IOException("Unable to write image archive: " + archiveFile);
+		return files.length;
+	}
+
+	static private String getKey (String name) {
+		return name.toLowerCase();
+	}
+
+	/**
+	 * Converts each directory in an images directory to an archive next to it. The images are not deleted.
+	 */
+	static public void main (String[] args) throws Exception {
+		if (args.length == 0) {
+			System.out.println("Usage: ImageArchive imagesPath [suffix]");
+			System.out.println("Writes an archive for each directory in imagesPath, eg images/LEA" + extension + " for images/LEA.");
+			return;
+		}
+		String suffix = args.length > 1 ? args[1] : ".jpg";
+		File[] dirs = new File(args[0]).listFiles(FileUtil.directoryFilter);
+		if (dirs == null) {
+			System.out.println("Directory not found: " + args[0]);
+			return;
+		}
+		Arrays.sort(dirs);
+		for (File dir : dirs) {
+			File archiveFile = new File(dir.getParentFile(), dir.getName() + extension);
+			int count = write(dir, archiveFile, suffix);
+			if (count == 0)
+				archiveFile.delete();
+			else
+				System.out.println(archiveFile + ": " + count + " images");
+		}
+	}
+
+	/**
+	 * Reads a buffer without copying it first.
+	 */
+	static private class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		public ByteBufferInputStream (ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public int read () {
+			if (!buffer.hasRemaining()) return -1;
+			return buffer.get() & 0xff;
+		}
+
+		public int read (byte[] bytes, int offset, int length) {
+			if (length == 0) return 0;
+			if (!buffer.hasRemaining()) return -1;
+			length = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, length);
+			return length;
+		}
+
+		public int available () {
+			return buffer.remaining();
+		}
+
+		public long skip (long count) {
+			count = Math.max(0, Math.min(count, buffer.remaining()));
+			buffer.position(buffer.position() + (int)count);
+			return count;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package arcane.util;
+
+/**
+ * Map of int keys to int values that does not box either. Uses open addressing with linear probing.
+ */
+public class IntIntMap {
+	private int[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size;
+
+	public IntIntMap () {
+		this(32);
+	}
+
+	public IntIntMap (int capacity) {
+		int length = 8;
+		while (length < capacity * 2)
+			length <<= 1;
+		keys = new int[length];
+		values = new int[length];
+		used = new boolean[length];
+	}
+
+	/**
+	 * Returns the value for the key, or the default value if the key is not in the map.
+	 */
+	public int get (int key, int defaultValue) {
+		int slot = find(key);
+		return used[slot] ? values[slot] : defaultValue;
+	}
+
+	public boolean containsKey (int key) {
+		return used[find(key)];
+	}
+
+	public void put (int key, int value) {
+		int slot = find(key);
+		values[slot] = value;
+		if (!used[slot]) add(slot, key);
+	}
+
+	/**
+	 * Adds the amount to the value for the key, which is treated as 0 if the key is not in the map.
+	 * @return The new value.
+	 */
+	public int increment (int key, int amount) {
+		int slot = find(key);
+		if (used[slot]) return values[slot] += amount;
+		values[slot] = amount;
+		add(slot, key);
+		return amount;
+	}
+
+	/**
+	 * Removes the key, returning its value or the default value if the key was not in the map.
+	 */
+	public int remove (int key, int defaultValue) {
+		int slot = find(key);
+		if (!used[slot]) return defaultValue;
+		int value = values[slot];
+		// Move back entries that were placed past the removed slot, so lookups don't stop at the gap.
+		int mask = keys.length - 1;
+		for (int next = (slot + 1) & mask; used[next]; next = (next + 1) & mask) {
+			int home = home(keys[next]);
+			if (((next - home) & mask) >= ((next - slot) & mask)) {
+				keys[slot] = keys[next];
+				values[slot] = values[next];
+				slot = next;
+			}
+		}
+		used[slot] = false;
+		size--;
+		return value;
+	}
+
+	public int size () {
+		return size;
+	}
+
+	public void clear () {
+		if (size == 0) return;
+		for (int i = 0, n = used.length; i < n; i++)
+			used[i] = false;
+		size = 0;
+	}
+
+	private void add (int slot, int key) {
+		keys[slot] = key;
+		used[slot] = true;
+		if (++size * 2 <= keys.length) return;
+
+		// Rehash.
+		int[] oldKeys = keys, oldValues = values;
+		boolean[] oldUsed = used;
+		keys = new int[oldKeys.length * 2];
+		values = new int[keys.length];
+		used = new boolean[keys.length];
+		for (int i = 0, n = oldKeys.length; i < n; i++) {
+			if (!oldUsed[i]) continue;
+			int newSlot = find(oldKeys[i]);
+			keys[newSlot] = oldKeys[i];
+			values[newSlot] = oldValues[i];
+			used[newSlot] = true;
+		}
+	}
+
+	/**
+	 * Returns the slot for the key, or the empty slot where it would be stored.
+	 */
+	private int find (int key) {
+		int mask = keys.length - 1;
+		int slot = home(key);
+		while (used[slot] && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private int home (int key) {
+		int hash = key * 0x9E3779B9;
+		return (hash ^ hash >>> 16) & (keys.length - 1);
+	}
+}
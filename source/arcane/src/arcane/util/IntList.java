@@ -0,0 +1,45 @@
+package arcane.util;
+
+/**
+ * A growable list of ints that does not box its values.
+ */
+public class IntList {
+	private int[] items;
+	private int size;
+
+	public IntList () {
+		this(16);
+	}
+
+	public IntList (int capacity) {
+		items = new int[capacity];
+	}
+
+	public void add (int value) {
+		if (size == items.length) {
+			int[] newItems = new int[Math.max(8, size * 2)];
+			System.arraycopy(items, 0, newItems, 0, size);
+			items = newItems;
+		}
+		items[size++] = value;
+	}
+
+	public int get (int index) {
+		if (index >= size) throw new IndexOutOfBoundsException("index can't be >= size: " + index + " >= " + size);
+		return items[index];
+	}
+
+	public int size () {
+		return size;
+	}
+
+	public void clear () {
+		size = 0;
+	}
+
+	public int[] toArray () {
+		int[] array = new int[size];
+		System.arraycopy(items, 0, array, 0, size);
+		return array;
+	}
+}
@@ -0,0 +1,183 @@
+package arcane.util;
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Runs tasks on a fixed number of daemon threads. Each task is queued in a lane, and a free thread always takes the oldest task
+ * from the highest priority lane that has one. A bounded lane that is full drops its oldest task to make room, since that task
+ * has usually been superseded by newer work. Tasks queued in a bounded lane must be safe to lose, or be a {@link Future} or
+ * {@link Droppable} so their owner finds out.
+ */
+public class PriorityExecutor {
+	private final LaneQueue[] queues;
+	private final int threadCount;
+
+	public PriorityExecutor (String name, int threadCount) {
+		this.threadCount = threadCount;
+		Lane[] lanes = Lane.values();
+		queues = new LaneQueue[lanes.length];
+		for (int i = 0; i < lanes.length; i++)
+			queues[i] = new LaneQueue();
+		for (int i = 1; i <= threadCount; i++) {
+			Thread thread = new Thread(new Worker(), name + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Queues the task in the lane. If the lane is full, its oldest task is dropped. A dropped {@link Future} is cancelled and a
+	 * dropped {@link Droppable} is notified, on the calling thread.
+	 */
+	public void execute (Lane lane, Runnable runnable) {
+		if (runnable == null) throw new IllegalArgumentException("runnable cannot be null.");
+		Runnable dropped = null;
+		synchronized (this) {
+			LaneQueue queue = queues[lane.ordinal()];
+			if (lane.capacity > 0 && queue.entries.size() >= lane.capacity) {
+				dropped = queue.entries.removeFirst().runnable;
+				queue.droppedCount++;
+			}
+			queue.entries.addLast(new Entry(queue, runnable));
+			queue.submittedCount++;
+			notify();
+		}
+		if (dropped instanceof Future) ((Future)dropped).cancel(false);
+		if (dropped instanceof Droppable) ((Droppable)dropped).dropped();
+	}
+
+	/**
+	 * Returns an executor that queues tasks in the lane.
+	 */
+	public Executor getExecutor (final Lane lane) {
+		return new Executor() {
+			public void execute (Runnable runnable) {
+				PriorityExecutor.this.execute(lane, runnable);
+			}
+		};
+	}
+
+	public int getThreadCount () {
+		return threadCount;
+	}
+
+	/**
+	 * Returns the number of tasks waiting in the lane.
+	 */
+	public synchronized int getQueueSize (Lane lane) {
+		return queues[lane.ordinal()].entries.size();
+	}
+
+	/**
+	 * Returns the number of tasks and the time spent waiting and running for the lane, eg for logging.
+	 */
+	public synchronized String getStats (Lane lane) {
+		LaneQueue queue = queues[lane.ordinal()];
+		long completed = Math.max(1, queue.completedCount);
+		return lane + ": submitted " + queue.submittedCount + ", dropped " + queue.droppedCount + ", completed "
+			+ queue.completedCount + ", queued " + queue.entries.size() + ", average wait " + queue.waitNanos / completed / 1000000
+			+ "ms (max " + queue.maxWaitNanos / 1000000 + "ms), average run " + queue.runNanos / completed / 1000000 + "ms (max "
+			+ queue.maxRunNanos / 1000000 + "ms)";
+	}
+
+	public String toString () {
+		StringBuffer buffer = new StringBuffer(256);
+		for (Lane lane : Lane.values()) {
+			if (buffer.length() > 0) buffer.append('\n');
+			buffer.append(getStats(lane));
+		}
+		return buffer.toString();
+	}
+
+	synchronized Entry take () throws InterruptedException {
+		while (true) {
+			for (LaneQueue queue : queues) {
+				if (queue.entries.isEmpty()) continue;
+				Entry entry = queue.entries.removeFirst();
+				long waitNanos = System.nanoTime() - entry.queueTime;
+				queue.waitNanos += waitNanos;
+				queue.maxWaitNanos = Math.max(queue.maxWaitNanos, waitNanos);
+				return entry;
+			}
+			wait();
+		}
+	}
+
+	synchronized void completed (Entry entry, long runNanos) {
+		LaneQueue queue = entry.queue;
+		queue.completedCount++;
+		queue.runNanos += runNanos;
+		queue.maxRunNanos = Math.max(queue.maxRunNanos, runNanos);
+	}
+
+	/**
+	 * The lanes, from highest to lowest priority.
+	 */
+	static public enum Lane {
+		/** Work the user is waiting to see, such as showing the selected card. Bounded, so tasks may be dropped. */
+		render(32),
+		/** Work that other tasks wait on, such as loading data. Never dropped. */
+		load(0),
+		/** Searches. Never dropped, since superseded searches are already cancelled by {@link SearchScheduler}. */
+		search(0),
+		/** Work done ahead of time, such as prefetching. Bounded, so tasks may be dropped. */
+		background(64);
+
+		/** The maximum number of queued tasks, or 0 for no limit. */
+		public final int capacity;
+
+		private Lane (int capacity) {
+			this.capacity = capacity;
+		}
+	}
+
+	/**
+	 * A task that is told when it is dropped from a bounded lane instead of being run, eg to clean up or to queue it again if its
+	 * work is still needed.
+	 */
+	static public interface Droppable extends Runnable {
+		public void dropped ();
+	}
+
+	static private class LaneQueue {
+		final LinkedList<Entry> entries = new LinkedList<Entry>();
+		long submittedCount, droppedCount, completedCount;
+		long waitNanos, maxWaitNanos, runNanos, maxRunNanos;
+	}
+
+	static private class Entry {
+		final LaneQueue queue;
+		final Runnable runnable;
+		final long queueTime = System.nanoTime();
+
+		Entry (LaneQueue queue, Runnable runnable) {
+			this.queue = queue;
+			this.runnable = runnable;
+		}
+	}
+
+	private class Worker implements Runnable {
+		public void run () {
+			while (true) {
+				Entry entry;
+				try {
+					entry = take();
+				} catch (InterruptedException ex) {
+					return;
+				}
+				long start = System.nanoTime();
+				try {
+					entry.runnable.run();
+				} catch (Throwable ex) {
+					// Report the error and keep the thread.
+					Thread thread = Thread.currentThread();
+					thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+				} finally {
+					completed(entry, System.nanoTime() - start);
+				}
+			}
+		}
+	}
+}
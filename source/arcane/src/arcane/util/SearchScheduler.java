@@ -0,0 +1,137 @@
+package arcane.util;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the searches for a single window, one at a time. A search waits for a short delay before it starts, so a burst of changes
+ * only runs the last search. Scheduling a search cancels the search that is waiting or running, and the new search is only
+ * started once the cancelled search has returned.
+ */
+public class SearchScheduler {
+	static private final Timer timer = new Timer("SearchScheduler", true);
+
+	private final Executor executor;
+	private final long delay;
+	private Search pending, running;
+	private TimerTask pendingTimer;
+	private int scheduledCount, completedCount, cancelledCount;
+
+	/**
+	 * @param delay Milliseconds a search waits before it starts.
+	 */
+	public SearchScheduler (Executor executor, long delay) {
+		this.executor = executor;
+		this.delay = delay;
+	}
+
+	/**
+	 * Schedules the search to run after the delay, cancelling any search that is waiting or running.
+	 */
+	public synchronized void schedule (final Search search) {
+		cancel();
+		scheduledCount++;
+		pending = search;
+		if (delay <= 0) {
+			ready(search);
+			return;
+		}
+		pendingTimer = new TimerTask() {
+			public void run () {
+				ready(search);
+			}
+		};
+		timer.schedule(pendingTimer, delay);
+	}
+
+	/**
+	 * Cancels the search that is waiting or running, if any.
+	 */
+	public synchronized void cancel () {
+		if (pendingTimer != null) {
+			pendingTimer.cancel();
+			pendingTimer = null;
+		}
+		if (pending != null) {
+			pending.cancel();
+			pending = null;
+			cancelledCount++;
+		}
+		if (running != null && !running.isCancelled()) {
+			running.cancel();
+			cancelledCount++;
+		}
+	}
+
+	synchronized void ready (Search search) {
+		if (pending != search) return;
+		pendingTimer = null;
+		// Otherwise it is started when the running search returns.
+		if (running == null) start();
+	}
+
+	private void start () {
+		final Search search = pending;
+		pending = null;
+		running = search;
+		executor.execute(new Runnable() {
+			public void run () {
+				try {
+					if (!search.isCancelled()) search.run();
+				} finally {
+					finished(search);
+				}
+			}
+		});
+	}
+
+	synchronized void finished (Search search) {
+		running = null;
+		if (!search.isCancelled()) completedCount++;
+		if (pending != null && pendingTimer == null) start();
+	}
+
+	/**
+	 * Returns the number of searches that are waiting or running, at most 2.
+	 */
+	public synchronized int getQueueDepth () {
+		return (pending != null ? 1 : 0) + (running != null ? 1 : 0);
+	}
+
+	public synchronized int getScheduledCount () {
+		return scheduledCount;
+	}
+
+	public synchronized int getCompletedCount () {
+		return completedCount;
+	}
+
+	/**
+	 * Returns the number of searches that were cancelled, either before they started or while running.
+	 */
+	public synchronized int getCancelledCount () {
+		return cancelledCount;
+	}
+
+	public synchronized String toString () {
+		return "scheduled: " + scheduledCount + ", completed: " + completedCount + ", cancelled: " + cancelledCount + ", queued: "
+			+ getQueueDepth();
+	}
+
+	/**
+	 * A search that stops early once it is cancelled. The search should check {@link #isCancelled()} regularly and before
+	 * applying its results.
+	 */
+	static abstract public class Search implements Runnable {
+		private volatile boolean cancelled;
+
+		public boolean isCancelled () {
+			return cancelled;
+		}
+
+		void cancel () {
+			cancelled = true;
+		}
+	}
+}
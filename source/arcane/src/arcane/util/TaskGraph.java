@@ -0,0 +1,161 @@
+package arcane.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import arcane.ui.util.Progress;
+
+/**
+ * Runs tasks on an executor, each as soon as the tasks it depends on have completed. The progress of tasks running at the same
+ * time is combined, weighted by each task's share of the total work.
+ */
+public class TaskGraph {
+	private final Progress progress;
+	private final List<Task> tasks = new ArrayList<Task>();
+	private float totalWeight;
+	private float completedWeight;
+	private int remaining, running;
+	private Throwable error;
+	private boolean cancelled;
+
+	public TaskGraph (Progress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Adds a task. Its dependencies must have been added first.
+	 */
+	public synchronized void add (Task task) {
+		if (task.graph != null) throw new IllegalArgumentException("Task has already been added: " + task.message);
+		for (Task dependency : task.dependencies) {
+			if (dependency.graph != this) throw new IllegalArgumentException("Dependency has not been added: " + dependency.message);
+			dependency.dependents.add(task);
+		}
+		task.graph = this;
+		tasks.add(task);
+		totalWeight += task.weight;
+	}
+
+	/**
+	 * Runs all tasks and blocks until they are complete, the graph is cancelled or a task fails. Tasks already running are always
+	 * waited for before returning.
+	 * @throws Exception The first exception thrown by a task. An error thrown by a task is rethrown as is.
+	 */
+	public void run (Executor executor) throws Exception {
+		synchronized (this) {
+			remaining = tasks.size();
+			for (Task task : tasks) {
+				task.pendingDependencies = task.dependencies.length;
+				if (task.pendingDependencies == 0) submit(task, executor);
+			}
+			while ((remaining > 0 && !cancelled) || running > 0)
+				wait();
+			if (error instanceof Error) throw (Error)error;
+			if (error != null) throw (Exception)error;
+		}
+	}
+
+	/**
+	 * Prevents tasks that have not started from running. Running tasks should check {@link Task#isCancelled()}.
+	 */
+	public synchronized void cancel () {
+		cancelled = true;
+		notifyAll();
+	}
+
+	public synchronized boolean isCancelled () {
+		return cancelled;
+	}
+
+	private void submit (final Task task, final Executor executor) {
+		running++;
+		executor.execute(new Runnable() {
+			public void run () {
+				boolean success = false;
+				try {
+					if (!isCancelled()) {
+						task.setMessage(task.message);
+						task.run();
+						success = true;
+					}
+				} catch (Throwable ex) {
+					// Includes errors, otherwise the graph would wait forever for the task's dependents.
+					synchronized (TaskGraph.this) {
+						if (error == null) error = ex;
+						cancelled = true;
+					}
+				} finally {
+					synchronized (TaskGraph.this) {
+						running--;
+						remaining--;
+						completedWeight += task.weight;
+						task.value = 0;
+						if (success && !cancelled) {
+							for (Task dependent : task.dependents)
+								if (--dependent.pendingDependencies == 0) submit(dependent, executor);
+						}
+						updateProgress();
+						TaskGraph.this.notifyAll();
+					}
+				}
+			}
+		});
+	}
+
+	synchronized void updateProgress () {
+		if (totalWeight == 0) return;
+		float value = completedWeight;
+		for (Task task : tasks)
+			value += task.weight * task.value;
+		progress.setValue(value / totalWeight);
+	}
+
+	synchronized void setMessage (String message) {
+		progress.setMessage(message);
+	}
+
+	/**
+	 * A unit of work in a task graph. The task reports its own progress, which is combined with the other tasks.
+	 */
+	static abstract public class Task implements Progress {
+		final String message;
+		final float weight;
+		final Task[] dependencies;
+		final List<Task> dependents = new ArrayList<Task>();
+		TaskGraph graph;
+		int pendingDependencies;
+		float value;
+
+		/**
+		 * @param message Shown when the task starts.
+		 * @param weight The task's share of the total work, relative to the other tasks.
+		 * @param dependencies Tasks that must complete before this task is run.
+		 */
+		public Task (String message, float weight, Task... dependencies) {
+			this.message = message;
+			this.weight = weight;
+			this.dependencies = dependencies;
+		}
+
+		abstract public void run () throws Exception;
+
+		public boolean isCancelled () {
+			return graph.isCancelled();
+		}
+
+		public void setMessage (String message) {
+			graph.setMessage(message);
+		}
+
+		/**
+		 * Sets the progress of this task. Unknown progress (-1) counts as none.
+		 */
+		public void setValue (float percentage) {
+			synchronized (graph) {
+				value = Math.max(0, Math.min(1, percentage));
+			}
+			graph.updateProgress();
+		}
+	}
+}
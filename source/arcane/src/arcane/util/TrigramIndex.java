@@ -0,0 +1,168 @@
+package arcane.util;
+
+import java.util.BitSet;
+
+/**
+ * Inverted index from every three character substring to the rows containing it. A substring search intersects the posting lists
+ * for the trigrams of the search text and only verifies the remaining candidates. Posting lists are stored as variable length
+ * encoded deltas between row numbers.
+ */
+public class TrigramIndex {
+	private final String[] values;
+	private final long[] keys;
+	private final int[] counts;
+	private final byte[][] postings;
+
+	/**
+	 * @param values The text for each row. The array is not copied and must not be modified afterward. Null values are allowed.
+	 */
+	public TrigramIndex (String[] values) {
+		this.values = values;
+
+		long[] keys = new long[1024];
+		int[] counts = new int[keys.length];
+		int[][] rows = new int[keys.length][];
+		int size = 0;
+		for (int row = 0, n = values.length; row < n; row++) {
+			String value = values[row];
+			if (value == null) continue;
+			for (int i = 0, last = value.length() - 2; i < last; i++) {
+				long key = key(value, i);
+				int slot = find(keys, counts, key);
+				int count = counts[slot];
+				int[] slotRows = rows[slot];
+				if (count == 0) {
+					keys[slot] = key;
+					rows[slot] = slotRows = new int[4];
+					size++;
+				} else if (slotRows[count - 1] == row) {
+					// Trigram occurs more than once in this row.
+					continue;
+				} else if (count == slotRows.length) {
+					int[] newRows = new int[count * 2];
+					System.arraycopy(slotRows, 0, newRows, 0, count);
+					rows[slot] = slotRows = newRows;
+				}
+				slotRows[count] = row;
+				counts[slot] = count + 1;
+
+				if (size * 2 > keys.length) {
+					// Rehash.
+					long[] newKeys = new long[keys.length * 2];
+					int[] newCounts = new int[newKeys.length];
+					int[][] newRows = new int[newKeys.length][];
+					for (int ii = 0, nn = keys.length; ii < nn; ii++) {
+						if (counts[ii] == 0) continue;
+						int newSlot = find(newKeys, newCounts, keys[ii]);
+						newKeys[newSlot] = keys[ii];
+						newCounts[newSlot] = counts[ii];
+						newRows[newSlot] = rows[ii];
+					}
+					keys = newKeys;
+					counts = newCounts;
+					rows = newRows;
+				}
+			}
+		}
+
+		// Compress the posting lists.
+		byte[][] postings = new byte[keys.length][];
+		byte[] buffer = new byte[32];
+		for (int slot = 0, n = keys.length; slot < n; slot++) {
+			int count = counts[slot];
+			if (count == 0) continue;
+			if (buffer.length < count * 5) buffer = new byte[count * 5];
+			int[] slotRows = rows[slot];
+			int length = 0, previous = 0;
+			for (int i = 0; i < count; i++) {
+				int delta = slotRows[i] - previous;
+				previous = slotRows[i];
+				while ((delta & ~0x7f) != 0) {
+					buffer[length++] = (byte)((delta & 0x7f) | 0x80);
+					delta >>>= 7;
+				}
+				buffer[length++] = (byte)delta;
+			}
+			postings[slot] = new byte[length];
+			System.arraycopy(buffer, 0, postings[slot], 0, length);
+			rows[slot] = null;
+		}
+
+		this.keys = keys;
+		this.counts = counts;
+		this.postings = postings;
+	}
+
+	/**
+	 * Returns the rows containing every trigram of the text, or null if the text is too short to use the index. The rows are
+	 * candidates only, they do not necessarily contain the text.
+	 */
+	public BitSet getCandidates (String text) {
+		int trigramCount = text.length() - 2;
+		if (trigramCount <= 0) return null;
+		int[] slots = new int[trigramCount];
+		for (int i = 0; i < trigramCount; i++) {
+			int slot = find(keys, counts, key(text, i));
+			if (counts[slot] == 0) return new BitSet();
+			// Insertion sort so the shortest posting lists are intersected first.
+			int ii = i;
+			for (; ii > 0 && counts[slots[ii - 1]] > counts[slot]; ii--)
+				slots[ii] = slots[ii - 1];
+			slots[ii] = slot;
+		}
+		BitSet rows = getRows(slots[0]);
+		for (int i = 1; i < trigramCount && !rows.isEmpty(); i++)
+			if (slots[i] != slots[i - 1]) rows.and(getRows(slots[i]));
+		return rows;
+	}
+
+	/**
+	 * Returns the rows containing the text.
+	 */
+	public BitSet search (String text) {
+		BitSet rows = new BitSet(values.length);
+		BitSet candidates = getCandidates(text);
+		if (candidates == null) {
+			for (int row = 0, n = values.length; row < n; row++)
+				if (values[row] != null && values[row].contains(text)) rows.set(row);
+		} else {
+			for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1))
+				if (values[row].contains(text)) rows.set(row);
+		}
+		return rows;
+	}
+
+	private BitSet getRows (int slot) {
+		BitSet rows = new BitSet(values.length);
+		byte[] bytes = postings[slot];
+		int row = 0;
+		for (int i = 0, n = bytes.length; i < n;) {
+			int delta = 0, shift = 0;
+			byte b;
+			do {
+				b = bytes[i++];
+				delta |= (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			row += delta;
+			rows.set(row);
+		}
+		return rows;
+	}
+
+	static private long key (String text, int index) {
+		return ((long)text.charAt(index) << 32) | ((long)text.charAt(index + 1) << 16) | text.charAt(index + 2);
+	}
+
+	/**
+	 * Returns the slot for the key, or the empty slot where it would be stored.
+	 */
+	static private int find (long[] keys, int[] counts, long key) {
+		int mask = keys.length - 1;
+		long hash = key * 0x9E3779B97F4A7C15L;
+		int slot = (int)(hash >>> 32) & mask;
+		while (counts[slot] != 0 && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+}
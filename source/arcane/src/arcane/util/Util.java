@@ -10,10 +10,6 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import javax.swing.SwingUtilities;
 
@@ -32,19 +28,7 @@ public class Util {
 		}
 	}
 
-	static public ThreadPoolExecutor threadPool;
-	static private int threadCount;
-	static {
-		threadPool = new ThreadPoolExecutor(4, 4, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
-			public Thread newThread (Runnable runnable) {
-				threadCount++;
-				Thread thread = new Thread(runnable, "Util" + threadCount);
-				thread.setDaemon(true);
-				return thread;
-			}
-		});
-		threadPool.prestartAllCoreThreads();
-	}
+	static public final PriorityExecutor threadPool = new PriorityExecutor("Util", 4);
 
 	public static void broadcast (byte[] data, int port) throws IOException {
 		DatagramSocket socket = new DatagramSocket();
@@ -0,0 +1,248 @@
+
+package arcane.deckbuilder.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import arcane.Card;
+import arcane.util.IntList;
+
+/**
+ * Finds the cards in a list whose names start with or contain some text. Names are kept sorted for prefix searches and a suffix
+ * array is built the first time a search needs names that contain the text. When the text extends the previous search, only the
+ * previous matches are checked.
+ */
+class CardNameIndex {
+	private final List<Card> cards, viewCards;
+	private final int modificationCount;
+	private final String[] names;
+	private final int[] sortedRows;
+	private long[] suffixes;
+	private String lastText;
+	private int[] lastStartsWithRows, lastContainsRows;
+
+	/**
+	 * @param cards A copy of the table's view cards, which can be modified in place while the index is built.
+	 * @param viewCards The table's view cards the copy was made from.
+	 * @param modificationCount The table model's modification count when the copy was made.
+	 */
+	public CardNameIndex (List<Card> cards, List<Card> viewCards, int modificationCount) {
+		this.cards = cards;
+		this.viewCards = viewCards;
+		this.modificationCount = modificationCount;
+		int n = cards.size();
+		names = new String[n];
+		for (int i = 0; i < n; i++)
+			names[i] = cards.get(i).name.toLowerCase();
+		long[] entries = new long[n];
+		for (int i = 0; i < n; i++)
+			entries[i] = getSuffix(i, 0);
+		mergeSort(entries.clone(), entries, 0, n);
+		sortedRows = new int[n];
+		for (int i = 0; i < n; i++)
+			sortedRows[i] = getRow(entries[i]);
+	}
+
+	/**
+	 * Returns true if the index was built for the view cards and they have not been modified since.
+	 */
+	public boolean isFor (List<Card> viewCards, int modificationCount) {
+		return this.viewCards == viewCards && this.modificationCount == modificationCount;
+	}
+
+	/**
+	 * Returns the cards whose names start with the text, followed by the cards whose names only contain it, each in list order. A
+	 * "*" in the text matches any characters.
+	 * @param text Lowercase.
+	 */
+	public synchronized List<Card> search (String text) {
+		int[] startsWithRows, containsRows;
+		if (text.contains("*")) {
+			IntList startsWith = new IntList(), contains = new IntList();
+			searchPattern(text, startsWith, contains);
+			startsWithRows = startsWith.toArray();
+			containsRows = contains.toArray();
+			lastText = null;
+		} else {
+			if (lastText != null && text.startsWith(lastText)) {
+				// Matches for the longer text are a subset of the previous matches. A name that started with the previous text may
+				// now only contain the text.
+				IntList startsWith = new IntList(), contains = new IntList();
+				filter(lastStartsWithRows, text, startsWith, contains);
+				filter(lastContainsRows, text, startsWith, contains);
+				startsWithRows = startsWith.toArray();
+				containsRows = contains.toArray();
+				Arrays.sort(containsRows);
+			} else {
+				startsWithRows = getStartsWithRows(text);
+				containsRows = getContainsRows(text);
+			}
+			lastText = text;
+			lastStartsWithRows = startsWithRows;
+			lastContainsRows = containsRows;
+		}
+
+		List<Card> result = new ArrayList<Card>(startsWithRows.length + containsRows.length);
+		for (int row : startsWithRows)
+			result.add(cards.get(row));
+		for (int row : containsRows)
+			result.add(cards.get(row));
+		return result;
+	}
+
+	private void filter (int[] rows, String text, IntList startsWith, IntList contains) {
+		for (int row : rows) {
+			String name = names[row];
+			if (name.startsWith(text))
+				startsWith.add(row);
+			else if (name.indexOf(text, 1) != -1) contains.add(row);
+		}
+	}
+
+	private void searchPattern (String text, IntList startsWith, IntList contains) {
+		String regex = text;
+		Pattern startsWithPattern = null;
+		if (regex.charAt(regex.length() - 1) != '*') regex = regex + "*";
+		if (regex.charAt(0) != '*') {
+			startsWithPattern = Pattern.compile(regex.replace("*", ".*"));
+			regex = "*" + regex;
+		}
+		Pattern containsPattern = Pattern.compile(regex.replace("*", ".*"));
+		for (int row = 0, n = names.length; row < n; row++) {
+			String name = names[row];
+			if (startsWithPattern != null && startsWithPattern.matcher(name).matches())
+				startsWith.add(row);
+			else if (containsPattern.matcher(name).matches()) contains.add(row);
+		}
+	}
+
+	/**
+	 * Returns the rows whose names start with the text, in row order.
+	 */
+	private int[] getStartsWithRows (String text) {
+		int low = 0, high = sortedRows.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (names[sortedRows[mid]].compareTo(text) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		IntList rows = new IntList();
+		for (int i = low, n = sortedRows.length; i < n && names[sortedRows[i]].startsWith(text); i++)
+			rows.add(sortedRows[i]);
+		int[] array = rows.toArray();
+		Arrays.sort(array);
+		return array;
+	}
+
+	/**
+	 * Returns the rows whose names contain the text after the first character, in row order.
+	 */
+	private int[] getContainsRows (String text) {
+		if (suffixes == null) buildSuffixes();
+		int low = 0, high = suffixes.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compareSuffix(suffixes[mid], text) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		IntList rows = new IntList();
+		for (int i = low, n = suffixes.length; i < n; i++) {
+			long suffix = suffixes[i];
+			if (!names[getRow(suffix)].startsWith(text, getOffset(suffix))) break;
+			rows.add(getRow(suffix));
+		}
+		int[] array = rows.toArray();
+		Arrays.sort(array);
+		// A name can contain the text more than once, and names that start with the text are returned as such.
+		IntList unique = new IntList(array.length);
+		for (int i = 0; i < array.length; i++) {
+			int row = array[i];
+			if (i > 0 && row == array[i - 1]) continue;
+			if (names[row].startsWith(text)) continue;
+			unique.add(row);
+		}
+		return unique.toArray();
+	}
+
+	/**
+	 * Sorts every suffix of the names, except the names themselves which are searched by prefix.
+	 */
+	private void buildSuffixes () {
+		int count = 0;
+		for (String name : names)
+			count += Math.max(0, name.length() - 1);
+		long[] entries = new long[count];
+		int i = 0;
+		for (int row = 0, n = names.length; row < n; row++)
+			for (int offset = 1, length = names[row].length(); offset < length; offset++)
+				entries[i++] = getSuffix(row, offset);
+		mergeSort(entries.clone(), entries, 0, count);
+		suffixes = entries;
+	}
+
+	private int compareSuffix (long suffix, String text) {
+		String name = names[getRow(suffix)];
+		int offset = getOffset(suffix);
+		int length = Math.min(name.length() - offset, text.length());
+		for (int i = 0; i < length; i++) {
+			int difference = name.charAt(offset + i) - text.charAt(i);
+			if (difference != 0) return difference;
+		}
+		return (name.length() - offset) - text.length();
+	}
+
+	private int compareSuffixes (long suffix1, long suffix2) {
+		String name1 = names[getRow(suffix1)], name2 = names[getRow(suffix2)];
+		int offset1 = getOffset(suffix1), offset2 = getOffset(suffix2);
+		int length1 = name1.length() - offset1, length2 = name2.length() - offset2;
+		for (int i = 0, n = Math.min(length1, length2); i < n; i++) {
+			int difference = name1.charAt(offset1 + i) - name2.charAt(offset2 + i);
+			if (difference != 0) return difference;
+		}
+		return length1 - length2;
+	}
+
+	private void mergeSort (long[] source, long[] dest, int low, int high) {
+		int length = high - low;
+		if (length < 7) {
+			for (int i = low; i < high; i++)
+				for (int j = i; j > low && compareSuffixes(dest[j - 1], dest[j]) > 0; j--) {
+					long temp = dest[j];
+					dest[j] = dest[j - 1];
+					dest[j - 1] = temp;
+				}
+			return;
+		}
+		int mid = (low + high) >>> 1;
+		mergeSort(dest, source, low, mid);
+		mergeSort(dest, source, mid, high);
+		if (compareSuffixes(source[mid - 1], source[mid]) <= 0) {
+			System.arraycopy(source, low, dest, low, length);
+			return;
+		}
+		for (int i = low, p = low, q = mid; i < high; i++) {
+			if (q >= high || p < mid && compareSuffixes(source[p], source[q]) <= 0)
+				dest[i] = source[p++];
+			else
+				dest[i] = source[q++];
+		}
+	}
+
+	static private long getSuffix (int row, int offset) {
+		return (long)row << 32 | offset;
+	}
+
+	static private int getRow (long suffix) {
+		return (int)(suffix >>> 32);
+	}
+
+	static private int getOffset (long suffix) {
+		return (int)suffix;
+	}
+}
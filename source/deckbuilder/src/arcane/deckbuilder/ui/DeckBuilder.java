@@ -31,14 +31,13 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -48,7 +47,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -79,7 +77,10 @@ import arcane.Arcane;
 import arcane.ArcaneException;
 import arcane.ArcanePreferences.CardImageType;
 import arcane.Card;
-import arcane.CardDataStore.CardDataStoreConnection;
+import arcane.CardIndex;
+import arcane.CardIndex.Attribute;
+import arcane.CardQuery;
+import arcane.CardQuery.Field;
 import arcane.Decklist;
 import arcane.DecklistCard;
 import arcane.DecklistFile;
@@ -93,6 +94,7 @@ import arcane.ui.table.RatingRenderer;
 import arcane.ui.table.SortedTable;
 import arcane.ui.util.ButtonMenuItem;
 import arcane.ui.util.DocumentModifiedListener;
+import arcane.ui.util.ImageCache;
 import arcane.ui.util.Menu;
 import arcane.ui.util.MenuItem;
 import arcane.ui.util.MessageFrame;
@@ -100,24 +102,32 @@ import arcane.ui.util.SplitPane;
 import arcane.ui.util.UI;
 import arcane.util.CSVReader;
 import arcane.util.CSVWriter;
+import arcane.util.FileIndex;
 import arcane.util.FileUtil;
+import arcane.util.ImageArchive;
+import arcane.util.IntIntMap;
 import arcane.util.Loader;
+import arcane.util.PriorityExecutor.Droppable;
+import arcane.util.PriorityExecutor.Lane;
+import arcane.util.SearchScheduler;
+import arcane.util.SearchScheduler.Search;
 import arcane.util.UnicodeReader;
 import arcane.util.Util;
-import com.google.common.collect.MapMaker;
 
 public class DeckBuilder extends DeckBuilderUI {
 	static private List<DeckBuilder> instances = new ArrayList<DeckBuilder>();
 
 	private Decklist currentDecklist;
 	private boolean searchDisabled;
-	private long lastSearchRefresh;
+	private SearchScheduler searchScheduler = new SearchScheduler(Util.threadPool.getExecutor(Lane.search), 100);
+	private SearchResult lastSearchResult;
 	private long lastQuickSearchRefresh;
 	private LinkedList<DeckAction> history = new LinkedList<DeckAction>();
 	private int historyIndex = -1;
 	private List<Card> quickSearchCards;
 	private int quickSearchIndex;
 	private String lastQuickSearch;
+	private volatile CardNameIndex cardNameIndex;
 	private LinkedList<Decklist> lastOpenedDecklists = new LinkedList<Decklist>();
 	private Map<JMenu, CardTable> addToMenus = new HashMap<JMenu, CardTable>();
 	private JFileChooser saveFileChooser;
@@ -128,7 +138,8 @@ public class DeckBuilder extends DeckBuilderUI {
 	private Image cautionT1, cautionT15, cautionT1X, cautionT2;
 	private boolean ignoreSelections;
 	private MessageFrame helpFrame;
-	private ConcurrentMap<Card, BufferedImage> imageCache;
+	private ImageCache imageCache, localImageCache;
+	private volatile FileIndex imageIndex;
 
 	public DeckBuilder () {
 		Loader loader = new Loader("Deck Builder - Arcane v" + Arcane.version) {
@@ -200,7 +211,10 @@ public class DeckBuilder extends DeckBuilderUI {
 	}
 
 	protected void initializeImageCache() {
-		imageCache = new MapMaker().softValues().makeMap();
+		imageCache = new ImageCache(new File("cache/images"), 64 * 1024 * 1024, 256 * 1024 * 1024, 480, 680);
+		// Local images are only cached in memory, since the disk tier would show a smaller, lossy copy instead of the file.
+		localImageCache = new ImageCache(null, 64 * 1024 * 1024, 0, 0, 0);
+		if (prefs.cardImageType == CardImageType.local) getImageIndex();
 	}
 
 	private void setCurrentDecklist (Decklist decklist) {
@@ -488,16 +502,30 @@ public class DeckBuilder extends DeckBuilderUI {
 		prefs.set("deckbuilder.card.always.match.english", String.valueOf(alwaysMatchEnglishMenuItem.isSelected()));
 	}
 
+	public void dispose () {
+		searchScheduler.cancel();
+		super.dispose();
+	}
+
 	public void updateCardTable () {
+		updateCardTable(false);
+	}
+
+	/**
+	 * Updates the card table after a color, type, rarity or set filter changed. If the rest of the search is unchanged, only the
+	 * rows the change adds are evaluated and the table is updated in place.
+	 */
+	private void filterCardTable () {
+		updateCardTable(true);
+	}
+
+	private void updateCardTable (boolean incremental) {
 		if (searchDisabled) return;
-		lastSearchRefresh = System.currentTimeMillis();
-		final long currentRefreshNumber = lastSearchRefresh;
 		final Card selectedCard = cardsTable.getSelectedRowCount() == 1 ? cardsTable.model.viewCards.get(cardsTable
 			.getSelectedRow()) : null;
-		Util.threadPool.submit(new Runnable() {
+		final SearchResult previousResult = incremental ? lastSearchResult : null;
+		searchScheduler.schedule(new Search() {
 			public void run () {
-				if (currentRefreshNumber != lastSearchRefresh) return;
-
 				final Object selectedItem = searchCombo.getEditor().getItem();
 				searchCombo.hidePopup();
 				searchCombo.setSelectedItem(selectedItem);
@@ -505,335 +533,158 @@ public class DeckBuilder extends DeckBuilderUI {
 				UI.setTitle(cardsGroup, "Cards (...)");
 				cardsTable.removeAll();
 
-				// Build where clause.
-				StringBuffer where = new StringBuffer(64);
+				CardIndex index = arcane.getCardIndex();
+
+				// Select rows for the color, type and rarity buttons.
+				BitSet rows;
 				if (exactButton.isSelected()) {
-					where.append("(1=1");
-					if (!whiteButton.isSelected()) where.append(" AND (castingCost NOT LIKE '%w%' AND color!='white')");
-					if (!blueButton.isSelected()) where.append(" AND (castingCost NOT LIKE '%u%' AND color!='blue')");
-					if (!blackButton.isSelected()) where.append(" AND (castingCost NOT LIKE '%b%' AND color!='black')");
-					if (!redButton.isSelected()) where.append(" AND (castingCost NOT LIKE '%r%' AND color!='red')");
-					if (!greenButton.isSelected()) where.append(" AND (castingCost NOT LIKE '%g%' AND color!='green')");
-					if (!colorlessButton.isSelected()) where.append(" AND (color != 'artifact' AND color != 'land')");
+					rows = index.getAllRows();
+					if (!whiteButton.isSelected()) rows.andNot(index.getRows(Attribute.white));
+					if (!blueButton.isSelected()) rows.andNot(index.getRows(Attribute.blue));
+					if (!blackButton.isSelected()) rows.andNot(index.getRows(Attribute.black));
+					if (!redButton.isSelected()) rows.andNot(index.getRows(Attribute.red));
+					if (!greenButton.isSelected()) rows.andNot(index.getRows(Attribute.green));
+					if (!colorlessButton.isSelected()) rows.andNot(index.getRows(Attribute.colorless));
 				} else {
-					where.append("(1=2");
-					if (whiteButton.isSelected()) where.append(" OR (castingCost LIKE '%w%' OR color='white')");
-					if (blueButton.isSelected()) where.append(" OR (castingCost LIKE '%u%' OR color='blue')");
-					if (blackButton.isSelected()) where.append(" OR (castingCost LIKE '%b%' OR color='black')");
-					if (redButton.isSelected()) where.append(" OR (castingCost LIKE '%r%' OR color='red')");
-					if (greenButton.isSelected()) where.append(" OR (castingCost LIKE '%g%' OR color='green')");
-					if (colorlessButton.isSelected()) where.append(" OR (color = 'artifact' OR color = 'land')");
-				}
-				where.append(") AND (1=2");
-				if (landButton.isSelected()) where.append(" OR (color = 'land')");
-				if (artifactButton.isSelected()) where.append(" OR (color = 'artifact' OR englishType LIKE '%artifact%')");
-				if (creatureButton.isSelected()) where.append(" OR (englishType LIKE '%creature%')");
-				if (sorceryButton.isSelected()) where.append(" OR (englishType LIKE '%sorcery%')");
-				if (instantButton.isSelected()) where.append(" OR (englishType LIKE '%instant%')");
-				if (enchantButton.isSelected()) where.append(" OR (englishType LIKE '%enchantment%' AND type NOT LIKE '%aura%')");
-				if (auraButton.isSelected()) where.append(" OR (englishType LIKE '%aura%')");
-				if (planeswalkerButton.isSelected()) where.append(" OR (englishType LIKE '%planeswalker%')");
-				where.append(") AND (1=2");
-				if (commonButton.isSelected()) where.append(" OR rarity='c'");
-				if (uncommonButton.isSelected()) where.append(" OR rarity='u'");
-				if (rareButton.isSelected()) where.append(" OR rarity='r'");
-				if (mythicrareButton.isSelected()) where.append(" OR rarity='m'");
-				where.append(")");
-
-				if (multiColorButton.isSelected()) where.append(" AND color='gold'");
-
-				where.append(" AND (1");
-				Set<String> requiredSets = new HashSet<String>();
-				List<Object[]> ratings = new ArrayList<Object[]>();
-				List<Character> flags = new ArrayList<Character>();
-				try {
-					CSVReader reader = new CSVReader(new StringReader(text), " ", "\"", true, false);
-					List<String> fields = reader.getFields();
-					if (fields != null) {
-						String fieldOperator = " AND";
-						for (String field : fields) {
-							String[] nameValue = field.split("[=<>]");
-							if (nameValue.length == 2) {
-								nameValue[0] = nameValue[0].toLowerCase();
-								nameValue[1] = nameValue[1].toLowerCase();
-								boolean quote = false;
-								String operator = field.substring(nameValue[0].length(), nameValue[0].length() + 1);
-								String columnName = null;
-								if (nameValue[0].equals("power") || nameValue[0].equals("p"))
-									columnName = "power";
-								else if (nameValue[0].equals("tough") || nameValue[0].equals("toughness") || nameValue[0].equals("t"))
-									columnName = "toughness";
-								else if (nameValue[0].equals("r") || nameValue[0].equals("rating") || nameValue[0].equals("ratings")) {
-									if (nameValue[1].length() != 1) continue;
-									try {
-										ratings.add(new Object[] {operator.charAt(0), Integer.valueOf(nameValue[1])});
-									} catch (NumberFormatException ignored) {
-									}
-									continue;
-								} else if (nameValue[0].equals("f") || nameValue[0].equals("flag") || nameValue[0].equals("flags")) {
-									for (int i = 0, n = nameValue[1].length(); i < n; i++)
-										flags.add(nameValue[1].charAt(i));
-									continue;
-								} else if (nameValue[0].equals("ccost") || nameValue[0].equals("cc")
-									|| nameValue[0].equals("convertedcost") || nameValue[0].equals("convertedcastingcost")) {
-									columnName = "convertedCastingCost";
-								} else if (nameValue[0].equals("cost") || nameValue[0].equals("c") || nameValue[0].equals("castingcost")) {
-									columnName = "castingCost";
-									StringBuffer value = new StringBuffer(nameValue[1]);
-									if (value.indexOf("{") == -1) {
-										for (int i = value.length() - 1; i > 0; i--) {
-											value.insert(i, '}');
-											value.insert(i + 1, '{');
-										}
-										value.insert(0, '{');
-										value.append('}');
-									}
-									nameValue[1] = value.toString();
-									if (nameValue[1].contains("*")) {
-										nameValue[1] = nameValue[1].replace("*", "%");
-										operator = "LIKE";
-									}
-									quote = true;
-								} else if (nameValue[0].equals("pt")) {
-									nameValue[1] = nameValue[1].replace('\\', '/');
-									String[] split = nameValue[1].split("\\/");
-									if (split.length == 2) {
-										where.append(fieldOperator);
-										where.append(" (power = ");
-										where.append(sql(split[0]));
-										where.append(" AND toughness = ");
-										where.append(sql(split[1]));
-										where.append(')');
-										fieldOperator = " AND";
-										continue;
-									}
-								} else if (nameValue[0].equals("s") || nameValue[0].equals("set")) {
-									requiredSets.add(arcane.getMainSet(nameValue[1]));
-									continue;
-								} else if (nameValue[0].equals("m") || nameValue[0].equals("mana") || nameValue[0].equals("manaproduced")) {
-									String colors = nameValue[1];
-									if (colors.length() == 0) continue;
-									if (colors.equals("colorless")) colors = "c";
-									where.append(fieldOperator);
-									where.append(" (1 ");
-									for (int i = 0, n = colors.length(); i < n; i++) {
-										where.append(" AND manaProduced LIKE '%");
-										char color = colors.charAt(i);
-										if (color == '\'') color = ' ';
-										where.append(color);
-										where.append("%'");
-									}
-									where.append(')');
-									continue;
-								}
-								if (columnName != null) {
-									where.append(fieldOperator);
-									where.append(" (");
-									where.append(columnName);
-									where.append(" ");
-									where.append(operator);
-									where.append(' ');
-									if (quote) where.append('\'');
-									where.append(sql(nameValue[1]));
-									if (quote) where.append('\'');
-									where.append(')');
-									fieldOperator = " AND";
-									continue;
-								}
-							}
-
-							String textWhere = "";
-							if (field.length() > 0) {
-								if (field.equals("OR")) {
-									fieldOperator = " OR";
-									continue;
-								}
-
-								boolean negate = field.charAt(0) == '-';
-								if (negate) field = field.substring(1);
-
-								// Replace * with % and surround with % only if not starting or ending with %.
-								String searchValue = field.replace('*', '%');
-								if (searchValue.length() <= 2
-									|| (searchValue.charAt(0) != '%' && searchValue.charAt(searchValue.length() - 1) != '%')) {
-									searchValue = "%" + searchValue + "%";
-								}
-								searchValue = sql(searchValue.toLowerCase());
-
-								boolean searchEnglishToo = alwaysMatchEnglishMenuItem.isSelected() && !prefs.isEnglishLanguage();
-								if (negate) {
-									if (titleButton.isSelected()) {
-										if (searchEnglishToo) {
-											textWhere += " AND (name NOT LIKE '" + searchValue + "' OR englishName NOT LIKE '" + searchValue
-												+ "')";
-										} else
-											textWhere += " AND (name NOT LIKE '" + searchValue + "')";
-									}
-									if (typeButton.isSelected()) {
-										if (searchEnglishToo) {
-											textWhere += " AND (type NOT LIKE '" + searchValue + "' OR englishType NOT LIKE '" + searchValue
-												+ "')";
-										} else
-											textWhere += " AND (type NOT LIKE '" + searchValue + "')";
-									}
-									if (textButton.isSelected()) {
-										if (searchEnglishToo) {
-											textWhere += " AND (legal NOT LIKE '" + searchValue + "' OR englishLegal NOT LIKE '"
-												+ searchValue + "')";
-										} else
-											textWhere += " AND (legal NOT LIKE '" + searchValue + "')";
-									}
-									if (searchValue.indexOf("{cardname}") != -1) {
-										String[] subText = searchValue.split("\\{cardname\\}");
-										if (searchEnglishToo) {
-											textWhere += " AND (legal NOT LIKE CONCAT('" + subText[0] + "', name ,'" + subText[1] + "') OR englishLegal NOT LIKE CONCAT('" + subText[0] + "', name ,'" + subText[1] + "'))";
-										} else
-											textWhere += " AND (legal NOT LIKE CONCAT('" + subText[0] + "', name ,'" + subText[1] + "'))";
-									}
-									if (textWhere.length() > 0) {
-										where.append(fieldOperator);
-										where.append(" (1=1");
-										where.append(textWhere);
-										where.append(')');
-									}
-								} else {
-									if (titleButton.isSelected()) {
-										if (searchEnglishToo) {
-											textWhere += " OR (name LIKE '" + searchValue + "' OR englishName LIKE '" + searchValue + "')";
-										} else
-											textWhere += " OR (name LIKE '" + searchValue + "')";
-									}
-									if (typeButton.isSelected()) {
-										if (searchEnglishToo) {
-											textWhere += " OR (type LIKE '" + searchValue + "' OR englishType LIKE '" + searchValue + "')";
-										} else
-											textWhere += " OR (type LIKE '" + searchValue + "')";
-									}
-									if (textButton.isSelected()) {
-										if (searchEnglishToo) {
-											textWhere += " OR (legal LIKE '" + searchValue + "' OR englishLegal LIKE '" + searchValue + "')";
-										} else
-											textWhere += " OR (legal LIKE '" + searchValue + "')";
-									}
-									if (searchValue.indexOf("{cardname}") != -1) {
-										String[] subText = searchValue.split("\\{cardname\\}");
-										if (searchEnglishToo) {
-											textWhere += " OR (legal LIKE CONCAT('" + subText[0] + "', name ,'" + subText[1] + "') OR englishLegal LIKE CONCAT('" + subText[0] + "', name ,'" + subText[1] + "'))";
-										} else
-											textWhere += " OR (legal LIKE CONCAT('" + subText[0] + "', name ,'" + subText[1] + "'))";
-									}
-									if (textWhere.length() > 0) {
-										where.append(fieldOperator);
-										where.append(" (1=2");
-										where.append(textWhere);
-										where.append(')');
-									}
-								}
-							}
-
-							fieldOperator = " AND";
-						}
-					}
-					reader.close();
-				} catch (IOException ex) {
-					throw new ArcaneException("Error parsing search text.", ex);
+					rows = new BitSet(index.size());
+					if (whiteButton.isSelected()) rows.or(index.getRows(Attribute.white));
+					if (blueButton.isSelected()) rows.or(index.getRows(Attribute.blue));
+					if (blackButton.isSelected()) rows.or(index.getRows(Attribute.black));
+					if (redButton.isSelected()) rows.or(index.getRows(Attribute.red));
+					if (greenButton.isSelected()) rows.or(index.getRows(Attribute.green));
+					if (colorlessButton.isSelected()) rows.or(index.getRows(Attribute.colorless));
 				}
-
-				where.append(") AND set IN (");
+				BitSet typeRows = new BitSet(index.size());
+				if (landButton.isSelected()) typeRows.or(index.getRows(Attribute.land));
+				if (artifactButton.isSelected()) typeRows.or(index.getRows(Attribute.artifact));
+				if (creatureButton.isSelected()) typeRows.or(index.getRows(Attribute.creature));
+				if (sorceryButton.isSelected()) typeRows.or(index.getRows(Attribute.sorcery));
+				if (instantButton.isSelected()) typeRows.or(index.getRows(Attribute.instant));
+				if (enchantButton.isSelected()) typeRows.or(index.getRows(Attribute.enchantment));
+				if (auraButton.isSelected()) typeRows.or(index.getRows(Attribute.aura));
+				if (planeswalkerButton.isSelected()) typeRows.or(index.getRows(Attribute.planeswalker));
+				rows.and(typeRows);
+				BitSet rarityRows = new BitSet(index.size());
+				if (commonButton.isSelected()) rarityRows.or(index.getRows(Attribute.common));
+				if (uncommonButton.isSelected()) rarityRows.or(index.getRows(Attribute.uncommon));
+				if (rareButton.isSelected()) rarityRows.or(index.getRows(Attribute.rare));
+				if (mythicrareButton.isSelected()) rarityRows.or(index.getRows(Attribute.mythicRare));
+				rows.and(rarityRows);
+
+				if (multiColorButton.isSelected()) rows.and(index.getRows(Attribute.gold));
+
+				CardQuery query = CardQuery.parse(text);
+				Set<Field> fields = EnumSet.noneOf(Field.class);
+				if (titleButton.isSelected()) fields.add(Field.name);
+				if (typeButton.isSelected()) fields.add(Field.type);
+				if (textButton.isSelected()) fields.add(Field.legal);
+				boolean searchEnglishToo = alwaysMatchEnglishMenuItem.isSelected() && !prefs.isEnglishLanguage();
+				CardQuery.Compiled filter = query.compile(index, fields, searchEnglishToo);
+
+				Set<String> requiredSets = new HashSet<String>(query.getSets());
 				if (requiredSets.isEmpty()) {
 					for (Object entry : setsList.getSelectedValues())
 						requiredSets.add(((SetEntry)entry).set);
 				}
-				for (String set : requiredSets) {
-					where.append('\'');
-					where.append(sql(set));
-					where.append("', ");
-				}
-				where.append("1)");
-
-				try {
-					// Execute query.
-					boolean uniqueOnly = uniqueOnlyButton.isSelected();
-					boolean ownedOnly = ownedOnlyButton.isSelected();
-					String sql = "SELECT name, set, version FROM cards WHERE " + where;
-					// System.out.println(sql);
-					CardDataStoreConnection conn = arcane.getCardDataStoreConnection();
-					conn.conn.setReadOnly(true);
-					PreparedStatement statement = conn.prepareStatement(sql);
-					if (currentRefreshNumber != lastSearchRefresh) return;
-					// long start = System.currentTimeMillis();
-					ResultSet resultSet = statement.executeQuery();
-					// long end = System.currentTimeMillis();
-					// System.out.println((end - start) / 1000F);
-					List<Card> visibleCards = new ArrayList<Card>(20000);
-					Format currentFormat = (Format)presetCombo.getSelectedItem();
-					outerLoop: while (resultSet.next()) {
-						if (currentRefreshNumber != lastSearchRefresh) return;
-						Card card = arcane.getCard(resultSet.getString("name"), resultSet.getString("set"), resultSet
-							.getString("version"));
-
-						if (uniqueOnly) {
-							// Skip rows that are not the first picture number and are not the oldest set that is valid for the query.
-							if (!"".equals(card.version) && !"a".equals(card.version) && !"1".equals(card.version) && !"Right".equals(card.version)) continue;
-							for (String oldestSet : arcane.getSets(card.name)) {
-								if (!requiredSets.contains(oldestSet)) continue;
-								if (card.set != oldestSet) continue outerLoop;
-								break;
-							}
-						}
-
-						if (ownedOnly) {
-							if (uniqueOnly) {
-								if (arcane.getTotalOwnedQty(card.name) == 0) continue;
-							} else {
-								if (card.ownedQty == 0) continue;
-							}
+				rows.and(index.getRows(requiredSets));
+
+				boolean uniqueOnly = uniqueOnlyButton.isSelected();
+				boolean ownedOnly = ownedOnlyButton.isSelected();
+				Format currentFormat = (Format)presetCombo.getSelectedItem();
+
+				// Rows that passed the previous search and are still candidates don't need to be evaluated again, as long as the
+				// search doesn't depend on data the user may have changed since.
+				StringBuffer keyBuffer = new StringBuffer(64);
+				keyBuffer.append(text).append('|').append(fields).append('|').append(searchEnglishToo).append('|');
+				keyBuffer.append(uniqueOnly).append('|').append(currentFormat);
+				if (uniqueOnly) keyBuffer.append('|').append(requiredSets);
+				String key = keyBuffer.toString();
+				BitSet evaluateRows = rows;
+				BitSet visibleRows = new BitSet(index.size());
+				boolean reuse = previousResult != null && previousResult.index == index && previousResult.key.equals(key);
+				if (reuse && !ownedOnly && !query.usesUserData()) {
+					visibleRows.or(previousResult.visibleRows);
+					visibleRows.and(rows);
+					evaluateRows = (BitSet)rows.clone();
+					evaluateRows.andNot(previousResult.rows);
+				} else
+					reuse = false;
+
+				// Execute query.
+				outerLoop: for (int row = evaluateRows.nextSetBit(0); row >= 0; row = evaluateRows.nextSetBit(row + 1)) {
+					if (isCancelled()) return;
+					if (!filter.matches(row)) continue;
+					Card card = index.getCard(row);
+
+					if (uniqueOnly) {
+						// Skip rows that are not the first picture number and are not the oldest set that is valid for the query.
+						if (!"".equals(card.version) && !"a".equals(card.version) && !"1".equals(card.version) && !"Right".equals(card.version)) continue;
+						for (String oldestSet : arcane.getSets(card.name)) {
+							if (!requiredSets.contains(oldestSet)) continue;
+							if (card.set != oldestSet) continue outerLoop;
+							break;
 						}
+					}
 
-						if (arcane.isBanned(card.englishName, currentFormat)) continue;
-
-						for (Object[] values : ratings) {
-							int rating = (Integer)values[1];
-							switch ((Character)values[0]) {
-							case '=':
-								if (card.rating != rating) continue outerLoop;
-								break;
-							case '<':
-								if (card.rating >= rating) continue outerLoop;
-								break;
-							case '>':
-								if (card.rating <= rating) continue outerLoop;
-								break;
-							}
+					if (ownedOnly) {
+						if (uniqueOnly) {
+							if (arcane.getTotalOwnedQty(card.name) == 0) continue;
+						} else {
+							if (card.ownedQty == 0) continue;
 						}
+					}
 
-						for (char flag : flags)
-							if (card.flags.indexOf(flag) == -1) continue outerLoop;
+					if (arcane.isBanned(card.englishName, currentFormat)) continue;
 
-						visibleCards.add(card);
-					}
-					resultSet.close();
-					statement.close();
-					cardsTable.model.unsortedCards = visibleCards;
-					lastQuickSearch = null;
-					quickSearchIndex = -1;
-				} catch (SQLException ex) {
-					arcane.logError(new ArcaneException("Error performing card search.", ex));
+					visibleRows.set(row);
 				}
-
-				cardsTable.model.isUniqueOnly = uniqueOnlyButton.isSelected();
+				if (isCancelled()) return;
+				final SearchResult result = new SearchResult(index, key, rows, visibleRows);
+				final List<Card> visibleCards = new ArrayList<Card>(visibleRows.cardinality());
+				for (int row = visibleRows.nextSetBit(0); row >= 0; row = visibleRows.nextSetBit(row + 1))
+					visibleCards.add(index.getCard(row));
+				final boolean updateRows = reuse;
 
 				SwingUtilities.invokeLater(new Runnable() {
 					public void run () {
-						if (currentRefreshNumber != lastSearchRefresh) return;
+						if (isCancelled()) return;
+						SearchResult shownResult = lastSearchResult;
+						lastSearchResult = result;
+						lastQuickSearch = null;
+						quickSearchIndex = -1;
+						cardNameIndex = null;
+						cardsTable.model.unsortedCards = visibleCards;
+						cardsTable.model.isUniqueOnly = uniqueOnlyButton.isSelected();
 						UI.setTitle(cardsGroup, "Cards ("
 							+ NumberFormat.getIntegerInstance().format(cardsTable.model.unsortedCards.size()) + ")");
-						cardsTable.model.fireTableDataChanged();
 
-						if (selectedCard != null)
-							cardsTable.setSelectedCard(selectedCard);
-						else
-							cardsTable.scrollRectToVisible(new Rectangle());
+						if (updateRows && shownResult == previousResult) {
+							// Only the rows that changed are removed and added.
+							CardIndex index = result.index;
+							BitSet removedRows = (BitSet)previousResult.visibleRows.clone();
+							removedRows.andNot(result.visibleRows);
+							List<Card> removedCards = new ArrayList<Card>(removedRows.cardinality());
+							for (int row = removedRows.nextSetBit(0); row >= 0; row = removedRows.nextSetBit(row + 1))
+								removedCards.add(index.getCard(row));
+							BitSet addedRows = (BitSet)result.visibleRows.clone();
+							addedRows.andNot(previousResult.visibleRows);
+							List<Card> addedCards = new ArrayList<Card>(addedRows.cardinality());
+							for (int row = addedRows.nextSetBit(0); row >= 0; row = addedRows.nextSetBit(row + 1))
+								addedCards.add(index.getCard(row));
+							cardsTable.updateRows(removedCards, addedCards);
+						} else {
+							cardsTable.model.fireTableDataChanged();
+
+							// A large table is sorted in the background.
+							cardsTable.runWhenSorted(new Runnable() {
+								public void run () {
+									if (selectedCard != null)
+										cardsTable.setSelectedCard(selectedCard);
+									else
+										cardsTable.scrollRectToVisible(new Rectangle());
+								}
+							});
+						}
 
 						if (text.length() > 0) {
 							searchComboModel.removeElement(selectedItem);
@@ -842,7 +693,11 @@ public class DeckBuilder extends DeckBuilderUI {
 							if (searchComboModel.getSize() > 50) searchComboModel.removeElementAt(50);
 						}
 
-						quickSearch(false);
+						cardsTable.runWhenSorted(new Runnable() {
+							public void run () {
+								quickSearch(false);
+							}
+						});
 					}
 				});
 			}
@@ -853,7 +708,10 @@ public class DeckBuilder extends DeckBuilderUI {
 		return deckTable.model.viewCards;
 	};
 
-	public Map<Card, Integer> getDeckCardToQty () {
+	/**
+	 * Returns card ID to quantity for the deck cards.
+	 */
+	public IntIntMap getDeckCardToQty () {
 		return deckTable.model.cardToQty;
 	};
 
@@ -861,7 +719,10 @@ public class DeckBuilder extends DeckBuilderUI {
 		return sideTable.model.viewCards;
 	};
 
-	public Map<Card, Integer> getSideCardToQty () {
+	/**
+	 * Returns card ID to quantity for the sideboard cards.
+	 */
+	public IntIntMap getSideCardToQty () {
 		return sideTable.model.cardToQty;
 	};
 
@@ -881,10 +742,6 @@ public class DeckBuilder extends DeckBuilderUI {
 		if (firstVisibleRow != -1) table.getSelectionModel().setSelectionInterval(firstVisibleRow, firstVisibleRow);
 	}
 
-	private String sql (String value) {
-		return value.replace("'", "''");
-	}
-
 	private boolean addCardToTable (Card card, CardTable table) {
 		if (card == null) return false;
 
@@ -1185,42 +1042,18 @@ public class DeckBuilder extends DeckBuilderUI {
 
 		lastQuickSearchRefresh = System.currentTimeMillis();
 		final long currentRefreshNumber = lastQuickSearchRefresh;
-		Util.threadPool.submit(new Runnable() {
+		final List<Card> viewCards = cardsTable.model.viewCards;
+		final int modificationCount = cardsTable.model.getModificationCount();
+		// The index is built from a copy, since viewCards is modified in place on this thread.
+		final List<Card> snapshot = new ArrayList<Card>(viewCards);
+		Util.threadPool.execute(Lane.search, new Runnable() {
 			public void run () {
 				if (currentRefreshNumber != lastQuickSearchRefresh) return;
-				final List<Card> cards = new ArrayList<Card>();
-				final List<Card> containsCards = new ArrayList<Card>();
-				Pattern startsWithPattern = null;
-				Pattern containsPattern = null;
-				if (text.contains("*")) {
-					String regex = text.toLowerCase();
-					if (regex.charAt(regex.length() - 1) != '*') {
-						regex = regex + "*";
-					}
-					if (regex.charAt(0) != '*') {
-						startsWithPattern = Pattern.compile(regex.replace("*", ".*"));
-						regex = "*" + regex;
-					}
-					containsPattern = Pattern.compile(regex.replace("*", ".*"));
-				}
-				for (Card card : cardsTable.model.viewCards) {
-					if (currentRefreshNumber != lastQuickSearchRefresh) return;
-					String name = card.name.toLowerCase();
-					if (containsPattern != null) {
-						if (startsWithPattern != null && startsWithPattern.matcher(name).matches())
-							cards.add(card);
-						else if (containsPattern.matcher(name).matches()) {
-							containsCards.add(card);
-						}
-					} else {
-						if (name.startsWith(text))
-							cards.add(card);
-						else if (name.contains(text)) {
-							containsCards.add(card);
-						}
-					}
-				}
-				cards.addAll(containsCards);
+				CardNameIndex index = cardNameIndex;
+				if (index == null || !index.isFor(viewCards, modificationCount))
+					cardNameIndex = index = new CardNameIndex(snapshot, viewCards, modificationCount);
+				if (currentRefreshNumber != lastQuickSearchRefresh) return;
+				final List<Card> cards = index.search(text);
 				SwingUtilities.invokeLater(new Runnable() {
 					public void run () {
 						if (currentRefreshNumber != lastQuickSearchRefresh) return;
@@ -1234,37 +1067,106 @@ public class DeckBuilder extends DeckBuilderUI {
 		});
 	}
 
-	protected void loadCardImage (Card card) {
-		if (prefs.cardImageType == CardImageType.local)
-			displayLocalCardImage(card);
-		else if (prefs.cardImageType == CardImageType.wizards) {
-			displayWizardsCardImage(card);
+	protected void loadCardImage (final Card card) {
+		if (prefs.cardImageType == CardImageType.none) return;
+		// Load on a separate task so the image is decoded while the next card's information is rendered.
+		Util.threadPool.execute(Lane.render, new Droppable() {
+			public void run () {
+				// Skip cards that were passed over before their image was loaded.
+				if (!cardInfoPane.isCurrentCard(card)) return;
+				if (prefs.cardImageType == CardImageType.local)
+					displayLocalCardImage(card);
+				else if (prefs.cardImageType == CardImageType.wizards) {
+					displayWizardsCardImage(card);
+				}
+			}
+
+			public void dropped () {
+				if (cardInfoPane.isCurrentCard(card)) Util.threadPool.execute(Lane.load, this);
+			}
+		});
+	}
+
+	/**
+	 * Loads the images for the cards into the image cache in the background, so they are shown without delay when selected.
+	 */
+	private void prefetchCardImages (List<Card> cards) {
+		if (prefs.cardImageType == CardImageType.none) return;
+		for (final Card card : cards) {
+			Util.threadPool.execute(Lane.background, new Runnable() {
+				public void run () {
+					try {
+						if (prefs.cardImageType == CardImageType.local) {
+							String imagePath = findLocalCardImage(card, new ArrayList<String>());
+							if (imagePath != null) loadLocalCardImage(imagePath);
+						} else if (prefs.cardImageType == CardImageType.wizards) {
+							loadWizardsCardImage(getWizardsCardImageURL(card));
+						}
+					} catch (IOException ignored) {
+						// Reported if the card is selected.
+					}
+				}
+			});
 		}
 	}
 
-	private void displayWizardsCardImage (Card card) {
+	private void prefetch (List<Card> cards) {
+		cardInfoPane.prefetch(cards);
+		prefetchCardImages(cards);
+	}
+
+	/**
+	 * Shows the image if the card is still the current card.
+	 */
+	private void showCardImage (final Card card, final BufferedImage srcImage) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run () {
+				if (!cardInfoPane.isCurrentCard(card)) return;
+				cardImagePanel.setScaleLarger(prefs.scaleCardImageLarger);
+				cardImagePanel.setImage(srcImage, null);
+				cardImagePanel.repaint();
+			}
+		});
+	}
+
+	private void clearCardImage (final Card card) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run () {
+				if (cardInfoPane.isCurrentCard(card)) cardImagePanel.clearImage();
+			}
+		});
+	}
+
+	private String getWizardsCardImageURL (Card card) {
 		String name = card.englishName.replace(", ", "_").replaceAll("[ -]", "_").replaceAll("[':\"!]", "").toLowerCase();
-		String url = "http://www.wizards.com/global/images/magic/general/" + name + ".jpg";
-		try {
-			BufferedImage srcImage;
-			if(imageCache.containsKey(card))
-				srcImage = imageCache.get(card);
-			else {
+		return "http://www.wizards.com/global/images/magic/general/" + name + ".jpg";
+	}
+
+	private BufferedImage loadWizardsCardImage (final String url) throws IOException {
+		return imageCache.get(url, new ImageCache.Loader() {
+			public BufferedImage load () throws IOException {
 				InputStream stream = new URL(url).openStream();
-				srcImage = ImageIO.read(stream);
-				imageCache.put(card, srcImage);
+				try {
+					return ImageIO.read(stream);
+				} finally {
+					stream.close();
+				}
 			}
-			if (!cardInfoPane.isCurrentCard(card)) return;
-			cardImagePanel.setScaleLarger(prefs.scaleCardImageLarger);
-			cardImagePanel.setImage(srcImage, null);
-			cardImagePanel.repaint();
+		});
+	}
+
+	private void displayWizardsCardImage (Card card) {
+		String url = getWizardsCardImageURL(card);
+		try {
+			BufferedImage srcImage = loadWizardsCardImage(url);
+			showCardImage(card, srcImage);
 			if (prefs.logFoundImages) arcane.log("Found card image URL: " + url);
 		} catch (MalformedURLException ex) {
 			if (prefs.logMissingImages) arcane.log("Invalid card image URL: " + url);
-			cardImagePanel.clearImage();
+			clearCardImage(card);
 		} catch (IOException ex) {
 			if (prefs.logMissingImages) arcane.log("Unable to load card image: " + url);
-			cardImagePanel.clearImage();
+			clearCardImage(card);
 		}
 	}
 
@@ -1287,7 +1189,11 @@ public class DeckBuilder extends DeckBuilderUI {
 		paths.add(prefs.imagesPath + cardName + prefs.imagesSuffix);
 	}
 
-	private void displayLocalCardImage (Card card) {
+	/**
+	 * Returns the path of the card's image, or null. The returned path can differ in case from the path that was tested.
+	 * @param paths Receives the paths that were tested.
+	 */
+	private String findLocalCardImage (Card card, List<String> paths) {
 		// Collect all possible sets, with the card's set first.
 		LinkedHashSet<String> sets = new LinkedHashSet<String>();
 		sets.addAll(arcane.getAlternateSets(card.set));
@@ -1297,16 +1203,57 @@ public class DeckBuilder extends DeckBuilderUI {
 			sets.addAll(arcane.getAlternateSets(set));
 		}
 		// Test a variety of paths.
-		List<String> paths = new ArrayList<String>();
 		addPaths(paths, card.name, card, sets);
 		if (!card.name.equals(card.englishName)) addPaths(paths, card.englishName, card, sets);
-		String imagePath = null;
+		FileIndex imageIndex = getImageIndex();
 		for (String path : paths) {
-			if (new File(path).exists()) {
-				imagePath = path;
-				break;
-			}
+			String imagePath = imageIndex.find(path);
+			if (imagePath != null) return imagePath;
+			imagePath = findArchivedImage(imageIndex, path);
+			if (imagePath != null) return imagePath;
 		}
+		return null;
+	}
+
+	/**
+	 * Returns the path of the image in the archive of the image's directory, or null.
+	 */
+	private String findArchivedImage (FileIndex imageIndex, String path) {
+		int nameStart = path.lastIndexOf('/');
+		if (nameStart < prefs.imagesPath.length()) return null;
+		String archivePath = imageIndex.find(path.substring(0, nameStart) + ImageArchive.extension);
+		if (archivePath == null) return null;
+		String name = path.substring(nameStart + 1);
+		try {
+			if (!ImageArchive.open(new File(archivePath)).contains(name)) return null;
+		} catch (IOException ex) {
+			if (prefs.logMissingImages) arcane.log("Unable to read image archive: " + archivePath);
+			return null;
+		}
+		return ImageArchive.getPath(archivePath, name);
+	}
+
+	/**
+	 * Returns the index of the files in the images directory, creating it if the directory has changed.
+	 */
+	private FileIndex getImageIndex () {
+		FileIndex imageIndex = this.imageIndex;
+		String imagesPath = prefs.imagesPath;
+		if (imageIndex == null || !imageIndex.isFor(imagesPath)) this.imageIndex = imageIndex = new FileIndex(imagesPath);
+		return imageIndex;
+	}
+
+	private BufferedImage loadLocalCardImage (final String imagePath) throws IOException {
+		return localImageCache.get(imagePath + "@" + ImageArchive.getFile(imagePath).lastModified(), new ImageCache.Loader() {
+			public BufferedImage load () throws IOException {
+				return ImageArchive.readImage(imagePath);
+			}
+		});
+	}
+
+	private void displayLocalCardImage (Card card) {
+		List<String> paths = new ArrayList<String>();
+		String imagePath = findLocalCardImage(card, paths);
 		if (imagePath == null) {
 			if (prefs.logMissingImages) {
 				StringBuffer errorBuffer = new StringBuffer(512);
@@ -1318,26 +1265,17 @@ public class DeckBuilder extends DeckBuilderUI {
 				}
 				arcane.log(errorBuffer.toString());
 			}
-			cardImagePanel.clearImage();
+			clearCardImage(card);
 		} else {
 			try {
-				BufferedImage srcImage;
-				if(imageCache.containsKey(card))
-					srcImage = imageCache.get(card);
-				else {
-					srcImage = ImageIO.read(new File(imagePath));
-					imageCache.put(card, srcImage);
-				}
-				if (!cardInfoPane.isCurrentCard(card)) return;
-				cardImagePanel.setScaleLarger(prefs.scaleCardImageLarger);
-				cardImagePanel.setImage(srcImage, null);
-				cardImagePanel.repaint();
+				BufferedImage srcImage = loadLocalCardImage(imagePath);
+				showCardImage(card, srcImage);
 				if (prefs.logFoundImages) {
 					StringBuffer errorBuffer = new StringBuffer(512);
 					errorBuffer.append("Found card image using the following paths:\n");
 					for (String path : paths) {
 						errorBuffer.append("   ");
-						if (path == imagePath) errorBuffer.append("*** ");
+						if (path.equalsIgnoreCase(imagePath)) errorBuffer.append("*** ");
 						errorBuffer.append(new File(path).getAbsolutePath());
 						errorBuffer.append('\n');
 					}
@@ -1557,30 +1495,35 @@ public class DeckBuilder extends DeckBuilderUI {
 				updateCardTable();
 			}
 		};
-		whiteButton.addActionListener(updateCardTable);
-		blueButton.addActionListener(updateCardTable);
-		blackButton.addActionListener(updateCardTable);
-		redButton.addActionListener(updateCardTable);
-		greenButton.addActionListener(updateCardTable);
-		colorlessButton.addActionListener(updateCardTable);
-		exactButton.addActionListener(updateCardTable);
-		multiColorButton.addActionListener(updateCardTable);
-		landButton.addActionListener(updateCardTable);
-		artifactButton.addActionListener(updateCardTable);
-		sorceryButton.addActionListener(updateCardTable);
-		creatureButton.addActionListener(updateCardTable);
-		instantButton.addActionListener(updateCardTable);
-		enchantButton.addActionListener(updateCardTable);
-		auraButton.addActionListener(updateCardTable);
-		planeswalkerButton.addActionListener(updateCardTable);
+		ActionListener filterCardTable = new ActionListener() {
+			public void actionPerformed (ActionEvent evt) {
+				filterCardTable();
+			}
+		};
+		whiteButton.addActionListener(filterCardTable);
+		blueButton.addActionListener(filterCardTable);
+		blackButton.addActionListener(filterCardTable);
+		redButton.addActionListener(filterCardTable);
+		greenButton.addActionListener(filterCardTable);
+		colorlessButton.addActionListener(filterCardTable);
+		exactButton.addActionListener(filterCardTable);
+		multiColorButton.addActionListener(filterCardTable);
+		landButton.addActionListener(filterCardTable);
+		artifactButton.addActionListener(filterCardTable);
+		sorceryButton.addActionListener(filterCardTable);
+		creatureButton.addActionListener(filterCardTable);
+		instantButton.addActionListener(filterCardTable);
+		enchantButton.addActionListener(filterCardTable);
+		auraButton.addActionListener(filterCardTable);
+		planeswalkerButton.addActionListener(filterCardTable);
 		titleButton.addActionListener(updateCardTable);
 		textButton.addActionListener(updateCardTable);
 		typeButton.addActionListener(updateCardTable);
 		searchButton.addActionListener(updateCardTable);
-		commonButton.addActionListener(updateCardTable);
-		uncommonButton.addActionListener(updateCardTable);
-		rareButton.addActionListener(updateCardTable);
-		mythicrareButton.addActionListener(updateCardTable);
+		commonButton.addActionListener(filterCardTable);
+		uncommonButton.addActionListener(filterCardTable);
+		rareButton.addActionListener(filterCardTable);
+		mythicrareButton.addActionListener(filterCardTable);
 		uniqueOnlyButton.addActionListener(updateCardTable);
 		ownedOnlyButton.addActionListener(updateCardTable);
 
@@ -1624,7 +1567,7 @@ public class DeckBuilder extends DeckBuilderUI {
 					}
 				}
 				searchDisabled = false;
-				updateCardTable();
+				filterCardTable();
 			}
 		};
 		whiteButton.addMouseListener(clicked);
@@ -1738,6 +1681,7 @@ public class DeckBuilder extends DeckBuilderUI {
 				if (ignoreSelections) return;
 				Card card = cardsTable.getSelectedCard();
 				cardInfoPane.setCard(card);
+				prefetch(cardsTable.getAdjacentCards(2));
 				ignoreSelections = true;
 				deckTable.clearSelection();
 				if (card != null) {
@@ -2163,6 +2107,7 @@ public class DeckBuilder extends DeckBuilderUI {
 				if (ignoreSelections) return;
 				Card card = deckTable.getSelectedCard();
 				cardInfoPane.setCard(card);
+				prefetch(deckTable.getAdjacentCards(2));
 				ignoreSelections = true;
 				cardsTable.clearSelection();
 				if (linkTablesButton.isSelected() && card != null) {
@@ -2230,6 +2175,7 @@ public class DeckBuilder extends DeckBuilderUI {
 				if (ignoreSelections) return;
 				Card card = sideTable.getSelectedCard();
 				cardInfoPane.setCard(card);
+				prefetch(sideTable.getAdjacentCards(2));
 				ignoreSelections = true;
 				cardsTable.clearSelection();
 				if (linkTablesButton.isSelected() && card != null) {
@@ -2534,7 +2480,7 @@ public class DeckBuilder extends DeckBuilderUI {
 				searchDisabled = true;
 				presetCombo.setSelectedItem(Format.custom);
 				searchDisabled = false;
-				updateCardTable();
+				filterCardTable();
 				updateDeckCount();
 			}
 		});
@@ -2600,6 +2546,7 @@ public class DeckBuilder extends DeckBuilderUI {
 			cardImageGroup.setVisible(false);
 		}
 		imageCache.clear();
+		localImageCache.clear();
 		cardInfoSplit.revalidate();
 	}
 
@@ -2761,6 +2708,23 @@ public class DeckBuilder extends DeckBuilderUI {
 		}
 	}
 
+	/**
+	 * The rows of the card index that were candidates for a search and the rows that passed it.
+	 */
+	static private class SearchResult {
+		public final CardIndex index;
+		public final String key;
+		public final BitSet rows;
+		public final BitSet visibleRows;
+
+		public SearchResult (CardIndex index, String key, BitSet rows, BitSet visibleRows) {
+			this.index = index;
+			this.key = key;
+			this.rows = rows;
+			this.visibleRows = visibleRows;
+		}
+	}
+
 	static private class SetEntry {
 		public final String name;
 		public final String set;
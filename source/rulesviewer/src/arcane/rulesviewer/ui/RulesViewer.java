@@ -9,8 +9,6 @@ import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.io.IOException;
 import java.io.StringReader;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.LinkedList;
@@ -46,16 +44,21 @@ import arcane.ui.util.SplitPane;
 import arcane.ui.util.ToolBar;
 import arcane.ui.util.UI;
 import arcane.util.CSVReader;
+import arcane.util.PriorityExecutor.Droppable;
+import arcane.util.PriorityExecutor.Lane;
+import arcane.util.SearchScheduler;
+import arcane.util.SearchScheduler.Search;
 import arcane.util.Util;
 
 public class RulesViewer extends ArcaneFrame {
 	private Arcane arcane = Arcane.getInstance();
 	private ArcanePreferences prefs = arcane.getPrefs();
 	private DefaultComboBoxModel resultsListModel;
-	private long lastRefreshNumber;
+	private SearchScheduler searchScheduler = new SearchScheduler(Util.threadPool.getExecutor(Lane.search), 150);
 	private LinkedList<RuleEntry> history = new LinkedList<RuleEntry>();
 	private int historyIndex = -1;
 	private boolean isHistoryClick;
+	private volatile RuleEntry selectedEntry;
 
 	public RulesViewer () {
 		setTitle("Rules Viewer - Arcane v" + Arcane.version);
@@ -69,6 +72,11 @@ public class RulesViewer extends ArcaneFrame {
 		updateSearch();
 	}
 
+	public void dispose () {
+		searchScheduler.cancel();
+		super.dispose();
+	}
+
 	private void loadPreferences () {
 		SplitPane.setScrollPaneInfo(getContentPane(), prefs.get("rulesviewer.splitpanes", "211,"));
 
@@ -129,8 +137,10 @@ public class RulesViewer extends ArcaneFrame {
 		} else
 			isHistoryClick = false;
 		updatedButtons();
-		Util.threadPool.submit(new Runnable() {
+		selectedEntry = entry;
+		Util.threadPool.execute(Lane.render, new Droppable() {
 			public void run () {
+				if (entry != selectedEntry) return;
 				final StringBuffer buffer = new StringBuffer(1024);
 				try {
 					RulesDataStoreConnection conn = arcane.getRulesDataStoreConnection();
@@ -159,12 +169,17 @@ public class RulesViewer extends ArcaneFrame {
 
 				SwingUtilities.invokeLater(new Runnable() {
 					public void run () {
+						if (entry != selectedEntry) return;
 						rulesEditorPane.setText("<html><body style='font-family:tahoma;font-size:11pt;margin:4px 4px 0px 5px'>"
 							+ buffer + "<br></body></html>");
 						rulesEditorPane.setCaretPosition(0);
 					}
 				});
 			}
+
+			public void dropped () {
+				if (entry == selectedEntry) Util.threadPool.execute(Lane.load, this);
+			}
 		});
 	}
 
@@ -174,29 +189,16 @@ public class RulesViewer extends ArcaneFrame {
 	}
 
 	private void updateSearch () {
-		lastRefreshNumber = System.currentTimeMillis();
-		final long currentRefreshNumber = lastRefreshNumber;
-		Util.threadPool.submit(new Runnable() {
+		searchScheduler.schedule(new Search() {
 			public void run () {
-				if (currentRefreshNumber != lastRefreshNumber) return;
-
 				String input = searchText.getText().trim();
 				UI.setTitle(resultsGroup, "Results (...)");
 				resultsListModel.removeAllElements();
 
-				// Build where clause.
-				StringBuffer where = new StringBuffer(64);
 				List<String> fields = null;
 				try {
 					CSVReader reader = new CSVReader(new StringReader(input), " ", "\"", true, false);
 					fields = reader.getFields();
-					if (fields != null) {
-						for (String field : fields) {
-							where.append(" AND text LIKE '%");
-							where.append(field.replace("'", "''"));
-							where.append("%'");
-						}
-					}
 					reader.close();
 				} catch (IOException ex) {
 					throw new ArcaneException("Error parsing search text.", ex);
@@ -224,30 +226,26 @@ public class RulesViewer extends ArcaneFrame {
 							ruleEntries.add(new RuleEntry(input, rule, subrules, ruleText, fields));
 						else {
 							// Do a search.
-							String sql = "SELECT rule, subrule FROM :table: WHERE 1=1" + where + " ORDER BY rule";
-							PreparedStatement statement = conn.prepareStatement(sql);
-							if (currentRefreshNumber != lastRefreshNumber) return;
-							ResultSet set = statement.executeQuery();
+							if (isCancelled()) return;
 							RuleEntry currentEntry = null;
-							while (set.next()) {
-								rule = set.getString(1);
+							for (String[] result : conn.search(fields)) {
+								rule = result[0];
 								if (currentEntry == null || !rule.equals(currentEntry.rule)) {
 									currentEntry = new RuleEntry(input, rule, new ArrayList<String>(), conn.getRuleText(rule), fields);
 									ruleEntries.add(currentEntry);
 								}
-								currentEntry.subrules.add(set.getString(2));
+								currentEntry.subrules.add(result[1]);
 							}
-							set.close();
-							statement.close();
 						}
 					}
 				} catch (SQLException ex) {
 					throw new ArcaneException("Error performing rules search.", ex);
 				}
+				if (isCancelled()) return;
 
 				SwingUtilities.invokeLater(new Runnable() {
 					public void run () {
-						if (currentRefreshNumber != lastRefreshNumber) return;
+						if (isCancelled()) return;
 						UI.setTitle(resultsGroup, "Results (" + ruleEntries.size() + ")");
 						for (RuleEntry entry : ruleEntries)
 							resultsListModel.addElement(entry);